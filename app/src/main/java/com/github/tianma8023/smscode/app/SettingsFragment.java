@@ -20,6 +20,7 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.tianma8023.smscode.BuildConfig;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.app.base.BasePreferenceFragment;
+import com.github.tianma8023.smscode.app.diagnostics.DiagnosticsActivity;
 import com.github.tianma8023.smscode.app.permissions.PermItemAdapter;
 import com.github.tianma8023.smscode.app.permissions.PermItemContainer;
 import com.github.tianma8023.smscode.app.record.CodeRecordsActivity;
@@ -27,6 +28,8 @@ import com.github.tianma8023.smscode.app.rule.CodeRulesActivity;
 import com.github.tianma8023.smscode.app.theme.ThemeItem;
 import com.github.tianma8023.smscode.constant.Const;
 import com.github.tianma8023.smscode.constant.PrefConst;
+import com.github.tianma8023.smscode.parser.ParseResult;
+import com.github.tianma8023.smscode.parser.PatternRegistry;
 import com.github.tianma8023.smscode.preference.ResetEditPreference;
 import com.github.tianma8023.smscode.preference.ResetEditPreferenceDialogFragCompat;
 import com.github.tianma8023.smscode.utils.AppOpsUtils;
@@ -46,6 +49,7 @@ import com.yanzhenjie.permission.Rationale;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -68,13 +72,15 @@ import static com.github.tianma8023.smscode.constant.PrefConst.DONATE_BY_ALIPAY;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENABLE;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_AUTO_INPUT_CODE;
 import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_CODE_RECORDS;
+import static com.github.tianma8023.smscode.constant.PrefConst.ENTRY_DIAGNOSTICS;
 import static com.github.tianma8023.smscode.constant.PrefConst.EXCLUDE_FROM_RECENTS;
 import static com.github.tianma8023.smscode.constant.PrefConst.GET_ALIPAY_PACKET;
 import static com.github.tianma8023.smscode.constant.PrefConst.KEY_GENERAL;
 import static com.github.tianma8023.smscode.constant.PrefConst.LISTEN_MODE;
 import static com.github.tianma8023.smscode.constant.PrefConst.MARK_AS_READ;
-import static com.github.tianma8023.smscode.constant.PrefConst.MAX_SMS_RECORDS_COUNT_DEFAULT;
 import static com.github.tianma8023.smscode.constant.PrefConst.RATING;
+import static com.github.tianma8023.smscode.constant.PrefConst.RECORDS_MAX_COUNT;
+import static com.github.tianma8023.smscode.constant.PrefConst.SMSCODE_KEYWORDS;
 import static com.github.tianma8023.smscode.constant.PrefConst.SMSCODE_TEST;
 import static com.github.tianma8023.smscode.constant.PrefConst.SOURCE_CODE;
 import static com.github.tianma8023.smscode.constant.PrefConst.VERBOSE_LOG_MODE;
@@ -158,6 +164,7 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
 
 
         // code message group
+        findPreference(SMSCODE_KEYWORDS).setOnPreferenceChangeListener(this);
         findPreference(CODE_RULES).setOnPreferenceClickListener(this);
         findPreference(SMSCODE_TEST).setOnPreferenceClickListener(this);
         // code message group end
@@ -167,6 +174,7 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
         Preference recordsEntryPref = findPreference(ENTRY_CODE_RECORDS);
         recordsEntryPref.setOnPreferenceClickListener(this);
         initRecordEntryPreference(recordsEntryPref);
+        findPreference(RECORDS_MAX_COUNT).setOnPreferenceChangeListener(this);
         // code records group end
 
 
@@ -179,6 +187,8 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
         SwitchPreference verboseLogPref = findPreference(VERBOSE_LOG_MODE);
         verboseLogPref.setOnPreferenceChangeListener(this);
         refreshVerboseLogPreference(verboseLogPref, verboseLogPref.isChecked());
+
+        findPreference(ENTRY_DIAGNOSTICS).setOnPreferenceClickListener(this);
         // others group end
 
 
@@ -264,6 +274,9 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             case ENTRY_CODE_RECORDS:
                 CodeRecordsActivity.startToMe(mActivity);
                 break;
+            case ENTRY_DIAGNOSTICS:
+                DiagnosticsActivity.startToMe(mActivity);
+                break;
             case SMSCODE_TEST:
                 showSmsCodeTestDialog();
                 break;
@@ -376,6 +389,13 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             case BLOCK_NOTIFICATION:
                 onBlockNotificationSwitched((SwitchPreference) preference, (Boolean) newValue);
                 break;
+            case RECORDS_MAX_COUNT:
+                refreshRecordEntryPreference(findPreference(ENTRY_CODE_RECORDS), (String) newValue);
+                break;
+            case SMSCODE_KEYWORDS:
+                // code keywords changed, cached keywords pattern is outdated
+                PatternRegistry.invalidateUserPatterns();
+                break;
             default:
                 return false;
         }
@@ -421,9 +441,9 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
             Message msg = new Message();
             msg.what = MSG_SMSCODE_TEST;
             if (TextUtils.isEmpty(mMsgBody)) {
-                msg.obj = "";
+                msg.obj = null;
             } else {
-                msg.obj = SmsCodeUtils.parseSmsCodeIfExists(mContext, mMsgBody);
+                msg.obj = SmsCodeUtils.parseSmsCode(mContext, mMsgBody);
             }
             mHandler.sendMessage(msg);
         }
@@ -434,20 +454,31 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
     private Handler mHandler = new Handler(msg -> {
         switch (msg.what) {
             case MSG_SMSCODE_TEST:
-                handleSmsCode((String) msg.obj);
+                handleSmsCode((ParseResult) msg.obj);
                 return true;
         }
         return false;
     });
 
-    private void handleSmsCode(String verificationCode) {
-        String text;
-        if (TextUtils.isEmpty(verificationCode)) {
-            text = getString(R.string.cannot_parse_smscode);
-        } else {
-            text = getString(R.string.cur_verification_code, verificationCode);
+    private void handleSmsCode(ParseResult result) {
+        if (result == null || !result.found()) {
+            Toast.makeText(mActivity, R.string.cannot_parse_smscode, Toast.LENGTH_LONG).show();
+            return;
         }
-        Toast.makeText(mActivity, text, Toast.LENGTH_LONG).show();
+        String source = result.isByCustomRule() ?
+                getString(R.string.parse_source_custom_rule, result.getRuleId()) :
+                getString(R.string.parse_source_default_rule);
+        String details = getString(R.string.smscode_test_result_details,
+                source,
+                result.getKeyword(),
+                result.getMatchLevel(),
+                result.getCandidateCount(),
+                TimeUnit.NANOSECONDS.toMicros(result.getTotalNanos()));
+        new MaterialDialog.Builder(mActivity)
+                .title(getString(R.string.cur_verification_code, result.getCode()))
+                .content(details)
+                .positiveText(R.string.okay)
+                .show();
     }
 
     private void onEnabledSwitched(boolean enable) {
@@ -597,7 +628,13 @@ public class SettingsFragment extends BasePreferenceFragment implements Preferen
     }
 
     private void initRecordEntryPreference(Preference preference) {
-        String summary = getString(R.string.pref_entry_code_records_summary, MAX_SMS_RECORDS_COUNT_DEFAULT);
+        refreshRecordEntryPreference(preference, String.valueOf(SPUtils.getRecordsMaxCount(mActivity)));
+    }
+
+    private void refreshRecordEntryPreference(Preference preference, String maxCount) {
+        String summary = getString(R.string.records_max_count_unlimited).equals(maxCount) ?
+                getString(R.string.pref_entry_code_records_unlimited_summary) :
+                getString(R.string.pref_entry_code_records_summary, maxCount);
         preference.setSummary(summary);
     }
 
@@ -0,0 +1,164 @@
+package com.github.tianma8023.smscode.app.diagnostics;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.app.base.BaseActivity;
+import com.github.tianma8023.smscode.service.HandleLatencyMetric;
+import com.github.tianma8023.smscode.service.action.ActionStats;
+import com.github.tianma8023.smscode.service.action.CodeAction;
+import com.github.tianma8023.smscode.service.action.CodeActionRegistry;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.io.File;
+import java.util.Locale;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.widget.Toolbar;
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Latency percentiles of the SMS handling pipeline
+ */
+public class DiagnosticsActivity extends BaseActivity {
+
+    @BindView(R.id.toolbar)
+    Toolbar mToolbar;
+
+    @BindView(R.id.diagnostics_text_view)
+    TextView mDiagnosticsTextView;
+
+    public static void startToMe(Context context) {
+        Intent intent = new Intent(context, DiagnosticsActivity.class);
+        context.startActivity(intent);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        ButterKnife.bind(this);
+
+        setupToolbar();
+        refreshStats();
+    }
+
+    private void setupToolbar() {
+        setSupportActionBar(mToolbar);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setHomeButtonEnabled(true);
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    private void refreshStats() {
+        PipelineTracer.StageStats[] statsArray = PipelineTracer.computeStats();
+        boolean empty = true;
+        StringBuilder sb = new StringBuilder();
+        // 耗时单位: ms, "since receive" 为阶段结束时距收到短信的时间
+        sb.append(String.format(Locale.US, "%-17s %5s %8s %8s %8s\n",
+                "stage", "count", "p50", "p95", "p99"));
+        for (PipelineTracer.StageStats stats : statsArray) {
+            if (stats.count > 0) {
+                empty = false;
+            }
+            sb.append(String.format(Locale.US, "%-17s %5d %8.2f %8.2f %8.2f\n",
+                    PipelineTracer.stageName(stats.stage), stats.count,
+                    PipelineTracer.toMillis(stats.p50),
+                    PipelineTracer.toMillis(stats.p95),
+                    PipelineTracer.toMillis(stats.p99)));
+        }
+        sb.append("\nsince receive\n");
+        for (PipelineTracer.StageStats stats : statsArray) {
+            sb.append(String.format(Locale.US, "%-17s %5d %8.2f %8.2f %8.2f\n",
+                    PipelineTracer.stageName(stats.stage), stats.count,
+                    PipelineTracer.toMillis(stats.sinceReceiveP50),
+                    PipelineTracer.toMillis(stats.sinceReceiveP95),
+                    PipelineTracer.toMillis(stats.sinceReceiveP99)));
+        }
+        sb.append(String.format(Locale.US, "\n%-17s %5s %5s %5s %8s %8s\n",
+                "action", "count", "fail", "tmo", "avg", "max"));
+        for (CodeAction action : CodeActionRegistry.getActions()) {
+            ActionStats stats = CodeActionRegistry.getStats(action.getName());
+            if (stats == null) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%-17s %5d %5d %5d %8.2f %8.2f\n",
+                    action.getName(), stats.getCount(), stats.getFailures(), stats.getTimeouts(),
+                    PipelineTracer.toMillis(stats.getAvgNanos()),
+                    PipelineTracer.toMillis(stats.getMaxNanos())));
+        }
+        // 服务冷启动与常驻时的处理耗时对比
+        sb.append(String.format(Locale.US, "\n%-17s %5s %8s %8s\n",
+                "handle latency", "count", "avg", "max"));
+        empty &= appendLatency(sb, "cold", HandleLatencyMetric.getCold());
+        empty &= appendLatency(sb, "warm", HandleLatencyMetric.getWarm());
+        if (empty) {
+            mDiagnosticsTextView.setText(R.string.diagnostics_empty);
+        } else {
+            mDiagnosticsTextView.setText(sb);
+        }
+    }
+
+    /**
+     * @return true if the stats is empty
+     */
+    private static boolean appendLatency(StringBuilder sb, String name, HandleLatencyMetric.Stats stats) {
+        long count = stats.getCount();
+        sb.append(String.format(Locale.US, "%-17s %5d %8.2f %8.2f\n",
+                name, count,
+                PipelineTracer.toMillis(stats.getAvgNanos()),
+                PipelineTracer.toMillis(stats.getMaxNanos())));
+        return count == 0;
+    }
+
+    private void exportTrace() {
+        try {
+            File file = PipelineTracer.export(this);
+            String text = getString(R.string.diagnostics_exported, file.getAbsolutePath());
+            Toast.makeText(this, text, Toast.LENGTH_LONG).show();
+        } catch (Exception e) {
+            XLog.e("Export pipeline trace failed", e);
+            Toast.makeText(this, R.string.export_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_diagnostics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                onBackPressed();
+                break;
+            case R.id.action_refresh:
+                refreshStats();
+                break;
+            case R.id.action_export_trace:
+                exportTrace();
+                break;
+            case R.id.action_clear_trace:
+                PipelineTracer.clear();
+                CodeActionRegistry.resetStats();
+                HandleLatencyMetric.reset();
+                refreshStats();
+                break;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+        return true;
+    }
+}
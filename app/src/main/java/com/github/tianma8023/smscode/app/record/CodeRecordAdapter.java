@@ -1,25 +1,50 @@
 package com.github.tianma8023.smscode.app.record;
 
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.util.TypedValue;
 
 import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.chad.library.adapter.base.BaseViewHolder;
 import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.db.SmsSearchIndex;
 import com.github.tianma8023.smscode.entity.SmsMsg;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 
 public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHolder> {
 
+    // 按时间倒序，时间相同时按 id 倒序，与分页查询的顺序一致
+    private static final Comparator<RecordItem> RECORD_ORDER = (o1, o2) -> {
+        SmsMsg msg1 = o1.getSmsMsg();
+        SmsMsg msg2 = o2.getSmsMsg();
+        int result = Long.compare(msg2.getDate(), msg1.getDate());
+        if (result == 0) {
+            result = Long.compare(msg2.getId(), msg1.getId());
+        }
+        return result;
+    };
+
     private final SimpleDateFormat mDateFormat;
 
+    // 搜索命中词的高亮颜色
+    private int mHighlightColor;
+
     CodeRecordAdapter(@Nullable List<RecordItem> data) {
         super(R.layout.item_code_record, data);
 
@@ -38,9 +63,43 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
                 .setText(R.id.date_text_view, mDateFormat.format(new Date(smsMsg.getDate())))
                 .setGone(R.id.record_details_view, !TextUtils.isEmpty(smsMsg.getBody()))
                 .addOnClickListener(R.id.record_details_view);
+        String snippet = item.getSnippet();
+        helper.setGone(R.id.snippet_text_view, snippet != null);
+        if (snippet != null) {
+            helper.setText(R.id.snippet_text_view, highlight(snippet));
+        }
         helper.itemView.setSelected(item.isSelected());
     }
 
+    /**
+     * Replace the enclosing marks of matched terms with highlight spans
+     */
+    private CharSequence highlight(String snippet) {
+        if (mHighlightColor == 0) {
+            TypedValue typedValue = new TypedValue();
+            mContext.getTheme().resolveAttribute(R.attr.colorAccent, typedValue, true);
+            mHighlightColor = typedValue.data;
+        }
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == SmsSearchIndex.SNIPPET_START) {
+                start = builder.length();
+            } else if (c == SmsSearchIndex.SNIPPET_END) {
+                if (start >= 0) {
+                    int end = builder.length();
+                    builder.setSpan(new ForegroundColorSpan(mHighlightColor), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    builder.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    start = -1;
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder;
+    }
+
     public void setItemSelected(int position, boolean selected) {
         RecordItem recordItem = getItem(position);
         if (recordItem != null) {
@@ -58,65 +117,157 @@ public class CodeRecordAdapter extends BaseQuickAdapter<RecordItem, BaseViewHold
         for(RecordItem recordItem : getData()) {
             recordItem.setSelected(selected);
         }
-        notifyDataSetChanged();
+        notifyItemRangeChanged(getHeaderLayoutCount(), getData().size());
     }
 
 
     public boolean isAllSelected() {
-        boolean allSelected = true;
-        for (int i = 0; i < getItemCount(); i++) {
-            if (!isItemSelected(i)) {
-                allSelected = false;
-                break;
+        for (RecordItem recordItem : getData()) {
+            if (!recordItem.isSelected()) {
+                return false;
             }
         }
-        return allSelected;
+        return true;
     }
 
     public boolean isAllUnselected() {
-        boolean allUnselected = true;
-        for (int i = 0; i < getItemCount(); i++) {
-            if (isItemSelected(i)) {
-                allUnselected = false;
-                break;
+        for (RecordItem recordItem : getData()) {
+            if (recordItem.isSelected()) {
+                return false;
             }
         }
-        return allUnselected;
+        return true;
     }
 
     public List<SmsMsg> removeSelectedItems() {
-        List<RecordItem> recordsToRemove = new ArrayList<>();
         List<SmsMsg> messagesToRemove = new ArrayList<>();
-        for (int i = 0; i < getItemCount(); i++) {
-            RecordItem item = getItem(i);
-            if (item != null && item.isSelected()) {
-                recordsToRemove.add(item);
-                messagesToRemove.add(item.getSmsMsg());
+        List<RecordItem> data = getData();
+        for (int i = data.size() - 1; i >= 0; i--) {
+            RecordItem item = data.get(i);
+            if (item.isSelected()) {
+                data.remove(i);
+                notifyItemRemoved(i + getHeaderLayoutCount());
+                messagesToRemove.add(0, item.getSmsMsg());
             }
         }
-        getData().removeAll(recordsToRemove);
-        notifyDataSetChanged();
-
         return messagesToRemove;
     }
 
-    public void addItems(List<SmsMsg> smsMsgList) {
-        List<RecordItem> itemsToAdd = new ArrayList<>();
+    /**
+     * The last loaded record, which is the anchor of the next page
+     */
+    @Nullable
+    public SmsMsg getLastSmsMsg() {
+        List<RecordItem> data = getData();
+        return data.isEmpty() ? null : data.get(data.size() - 1).getSmsMsg();
+    }
+
+    /**
+     * Append the next page, records are already in order
+     */
+    public void appendItems(List<SmsMsg> smsMsgList) {
+        List<RecordItem> itemsToAdd = new ArrayList<>(smsMsgList.size());
+        for (SmsMsg msg : smsMsgList) {
+            itemsToAdd.add(new RecordItem(msg));
+        }
+        addData(itemsToAdd);
+    }
+
+    /**
+     * Replace loaded records with the reloaded ones, only changed items are rebound.
+     * Selection state is kept.
+     */
+    public void setItems(List<SmsMsg> smsMsgList) {
+        List<RecordItem> newItems = new ArrayList<>(smsMsgList.size());
+        for (SmsMsg msg : smsMsgList) {
+            newItems.add(new RecordItem(msg));
+        }
+        replaceItems(newItems);
+    }
+
+    /**
+     * Replace loaded records with the search matches, matched fragments are highlighted.
+     */
+    public void setMatches(List<SmsSearchIndex.Match> matches) {
+        List<RecordItem> newItems = new ArrayList<>(matches.size());
+        for (SmsSearchIndex.Match match : matches) {
+            RecordItem item = new RecordItem(match.smsMsg);
+            item.setSnippet(match.snippet);
+            newItems.add(item);
+        }
+        replaceItems(newItems);
+    }
+
+    private void replaceItems(List<RecordItem> newItems) {
+        List<RecordItem> oldItems = new ArrayList<>(getData());
+        Set<Long> selectedIds = new HashSet<>();
+        for (RecordItem item : oldItems) {
+            if (item.isSelected()) {
+                selectedIds.add(item.getSmsMsg().getId());
+            }
+        }
+        for (RecordItem item : newItems) {
+            item.setSelected(selectedIds.contains(item.getSmsMsg().getId()));
+        }
+
+        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new RecordDiffCallback(oldItems, newItems));
+        getData().clear();
+        getData().addAll(newItems);
+        diffResult.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Insert records back to where they were, e.g. revoke removing
+     */
+    public void restoreItems(List<SmsMsg> smsMsgList) {
+        List<RecordItem> data = getData();
         for (SmsMsg msg : smsMsgList) {
             RecordItem item = new RecordItem(msg);
-            if (!getData().contains(item)) {
-                itemsToAdd.add(item);
+            int index = Collections.binarySearch(data, item, RECORD_ORDER);
+            if (index < 0) {
+                addData(-index - 1, item);
             }
         }
+    }
+
+    private static class RecordDiffCallback extends DiffUtil.Callback {
+
+        private final List<RecordItem> mOldItems;
+        private final List<RecordItem> mNewItems;
+
+        RecordDiffCallback(List<RecordItem> oldItems, List<RecordItem> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).equals(mNewItems.get(newItemPosition));
+        }
 
-        if (!itemsToAdd.isEmpty()) {
-            getData().addAll(itemsToAdd);
-            Collections.sort(getData(), (o1, o2) -> {
-                long date1 = o1.getSmsMsg().getDate();
-                long date2 = o2.getSmsMsg().getDate();
-                return Long.compare(date2, date1);
-            });
-            notifyDataSetChanged();
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            RecordItem oldItem = mOldItems.get(oldItemPosition);
+            RecordItem newItem = mNewItems.get(newItemPosition);
+            SmsMsg oldMsg = oldItem.getSmsMsg();
+            SmsMsg newMsg = newItem.getSmsMsg();
+            return oldItem.isSelected() == newItem.isSelected()
+                    && TextUtils.equals(oldItem.getSnippet(), newItem.getSnippet())
+                    && oldMsg.getDate() == newMsg.getDate()
+                    && TextUtils.equals(oldMsg.getCompany(), newMsg.getCompany())
+                    && TextUtils.equals(oldMsg.getSender(), newMsg.getSender())
+                    && TextUtils.equals(oldMsg.getSmsCode(), newMsg.getSmsCode())
+                    && TextUtils.equals(oldMsg.getBody(), newMsg.getBody());
         }
     }
 }
@@ -2,29 +2,45 @@ package com.github.tianma8023.smscode.app.record;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.app.base.back.BackPressFragment;
 import com.github.tianma8023.smscode.db.DBManager;
+import com.github.tianma8023.smscode.db.DBWriter;
+import com.github.tianma8023.smscode.db.SmsSearchIndex;
 import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.event.Event;
+import com.github.tianma8023.smscode.event.XEventBus;
 import com.github.tianma8023.smscode.utils.ClipboardUtils;
 import com.github.tianma8023.smscode.utils.SnackbarHelper;
 import com.github.tianma8023.smscode.utils.XLog;
 import com.google.android.material.snackbar.Snackbar;
 
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -45,19 +61,40 @@ public class CodeRecordsFragment extends BackPressFragment {
     private @interface RecordMode {
     }
 
+    // records count of one page
+    private static final int PAGE_SIZE = 50;
+    // max count of search matches
+    private static final int SEARCH_LIMIT = 200;
+    // 输入停顿后再搜索
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
     private Activity mActivity;
 
     @BindView(R.id.code_records_recycler_view)
     RecyclerView mRecyclerView;
 
     @BindView(R.id.empty_view)
-    View mEmptyView;
+    TextView mEmptyView;
 
     private CodeRecordAdapter mCodeRecordAdapter;
 
     @RecordMode
     private int mCurrentMode = RECORD_MODE_NORMAL;
 
+    // 在后台线程加载记录
+    private ExecutorService mLoadExecutor;
+    // 每次刷新递增，丢弃过期的加载结果
+    private int mLoadGeneration;
+    private boolean mRefreshing;
+    // 已移除但尚未从数据库删除的记录
+    private final Set<Long> mPendingRemovalIds = new HashSet<>();
+
+    // 当前搜索词，为空时分页显示全部记录
+    private String mSearchQuery = "";
+    private final Handler mSearchHandler = new Handler(Looper.getMainLooper());
+    private String mPendingSearchQuery = "";
+    private final Runnable mSearchRunnable = () -> search(mPendingSearchQuery);
+
     public static CodeRecordsFragment newInstance() {
         return new CodeRecordsFragment();
     }
@@ -66,6 +103,7 @@ public class CodeRecordsFragment extends BackPressFragment {
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
+        mLoadExecutor = Executors.newSingleThreadExecutor();
     }
 
     @Nullable
@@ -95,6 +133,16 @@ public class CodeRecordsFragment extends BackPressFragment {
             public void onChanged() {
                 refreshEmptyView();
             }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                refreshEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                refreshEmptyView();
+            }
         });
 
         mCodeRecordAdapter.setOnItemChildClickListener((adapter, view, position) -> {
@@ -114,6 +162,24 @@ public class CodeRecordsFragment extends BackPressFragment {
         mRecyclerView.setLayoutManager(new LinearLayoutManager(mActivity));
         mRecyclerView.setAdapter(mCodeRecordAdapter);
         mRecyclerView.addItemDecoration(new DividerItemDecoration(mActivity, DividerItemDecoration.VERTICAL));
+
+        mCodeRecordAdapter.setPreLoadNumber(PAGE_SIZE / 5);
+        mCodeRecordAdapter.setOnLoadMoreListener(this::loadMoreData, mRecyclerView);
+
+        // 首页加载完成前不显示空视图
+        mEmptyView.setVisibility(View.GONE);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        XEventBus.register(this);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        XEventBus.unregister(this);
     }
 
     @Override
@@ -122,13 +188,155 @@ public class CodeRecordsFragment extends BackPressFragment {
         refreshData();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mLoadExecutor.shutdownNow();
+    }
+
+    /**
+     * Reload all the loaded records, at least one page
+     */
     private void refreshData() {
-        List<SmsMsg> smsMsgList = DBManager.get(mActivity).queryAllSmsMsg();
-        mCodeRecordAdapter.addItems(smsMsgList);
+        if (!mSearchQuery.isEmpty()) {
+            search(mSearchQuery);
+            return;
+        }
+        if (!mCodeRecordAdapter.isLoadMoreEnable()) {
+            mCodeRecordAdapter.setEnableLoadMore(true);
+        }
+        mLoadGeneration++;
+        mRefreshing = true;
+        int limit = Math.max(PAGE_SIZE, mCodeRecordAdapter.getData().size());
+        loadPage(mLoadGeneration, true, null, limit);
+    }
+
+    private void loadMoreData() {
+        if (mRefreshing || !mSearchQuery.isEmpty()) {
+            // 刷新结果会结束本次加载
+            return;
+        }
+        loadPage(mLoadGeneration, false, mCodeRecordAdapter.getLastSmsMsg(), PAGE_SIZE);
+    }
+
+    private void loadPage(final int generation, final boolean refresh, final SmsMsg anchor, final int pageSize) {
+        final DBManager dbManager = DBManager.get(mActivity);
+        mLoadExecutor.execute(() -> {
+            List<SmsMsg> records;
+            try {
+                records = dbManager.querySmsMsgPage(anchor, pageSize);
+            } catch (Exception e) {
+                XLog.e("Error occurs when load SMS records", e);
+                records = null;
+            }
+            XEventBus.post(new Event.RecordPageLoadEvent(generation, refresh, records, pageSize));
+        });
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onRecordPageLoaded(Event.RecordPageLoadEvent event) {
+        if (event.generation != mLoadGeneration) {
+            return;
+        }
+        if (event.refresh) {
+            mRefreshing = false;
+        }
+        if (event.records == null) {
+            mCodeRecordAdapter.loadMoreFail();
+            return;
+        }
+
+        boolean hasMore = event.records.size() >= event.pageSize;
+        List<SmsMsg> records = event.records;
+        if (!mPendingRemovalIds.isEmpty()) {
+            records = new ArrayList<>(records);
+            for (Iterator<SmsMsg> it = records.iterator(); it.hasNext(); ) {
+                if (mPendingRemovalIds.contains(it.next().getId())) {
+                    it.remove();
+                }
+            }
+        }
+        if (event.refresh) {
+            mCodeRecordAdapter.setItems(records);
+        } else {
+            mCodeRecordAdapter.appendItems(records);
+        }
+        if (hasMore) {
+            mCodeRecordAdapter.loadMoreComplete();
+        } else {
+            mCodeRecordAdapter.loadMoreEnd();
+        }
+        refreshEmptyView();
+    }
+
+    private void onSearchQueryChanged(String query) {
+        mPendingSearchQuery = query;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Search records in background, empty query goes back to paged records
+     */
+    private void search(String query) {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        String searchQuery = query == null ? "" : query.trim();
+        boolean searchChanged = !searchQuery.equals(mSearchQuery);
+        mSearchQuery = searchQuery;
+        if (searchQuery.isEmpty()) {
+            if (searchChanged) {
+                refreshData();
+            }
+            return;
+        }
+
+        mCodeRecordAdapter.setEnableLoadMore(false);
+        final int generation = ++mLoadGeneration;
+        mRefreshing = true;
+        final DBManager dbManager = DBManager.get(mActivity);
+        mLoadExecutor.execute(() -> {
+            List<SmsSearchIndex.Match> matches;
+            try {
+                matches = dbManager.searchSmsMsg(searchQuery, SEARCH_LIMIT);
+            } catch (Exception e) {
+                XLog.e("Error occurs when search SMS records", e);
+                matches = null;
+            }
+            XEventBus.post(new Event.RecordSearchEvent(generation, matches));
+        });
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onRecordSearched(Event.RecordSearchEvent event) {
+        if (event.generation != mLoadGeneration) {
+            return;
+        }
+        mRefreshing = false;
+        if (event.matches == null) {
+            // 搜索失败时不保留之前的结果，避免误以为是本次的匹配
+            mCodeRecordAdapter.setMatches(new ArrayList<>());
+            mEmptyView.setText(R.string.search_records_failed);
+            mEmptyView.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        List<SmsSearchIndex.Match> matches = event.matches;
+        if (!mPendingRemovalIds.isEmpty()) {
+            matches = new ArrayList<>(matches);
+            for (Iterator<SmsSearchIndex.Match> it = matches.iterator(); it.hasNext(); ) {
+                if (mPendingRemovalIds.contains(it.next().smsMsg.getId())) {
+                    it.remove();
+                }
+            }
+        }
+        mCodeRecordAdapter.setMatches(matches);
+        refreshEmptyView();
     }
 
     private void refreshEmptyView() {
-        if (mCodeRecordAdapter.getItemCount() > 0) {
+        mEmptyView.setText(mSearchQuery.isEmpty() ? R.string.list_empty_prompt : R.string.search_records_empty);
+        if (!mCodeRecordAdapter.getData().isEmpty()) {
             mEmptyView.setVisibility(View.GONE);
         } else {
             mEmptyView.setVisibility(View.VISIBLE);
@@ -186,7 +394,50 @@ public class CodeRecordsFragment extends BackPressFragment {
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         if (mCurrentMode == RECORD_MODE_EDIT) {
             inflater.inflate(R.menu.menu_edit_code_record, menu);
+        } else {
+            inflater.inflate(R.menu.menu_code_records, menu);
+            setupSearchView(menu.findItem(R.id.action_search));
+        }
+    }
+
+    private void setupSearchView(MenuItem searchItem) {
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_records_hint));
+        if (!mSearchQuery.isEmpty()) {
+            // 编辑模式结束后恢复搜索
+            searchItem.expandActionView();
+            searchView.setQuery(mSearchQuery, false);
+            searchView.clearFocus();
         }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                onSearchQueryChanged(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                // 进入编辑模式重建菜单时也会收起，此时保留搜索
+                if (mCurrentMode == RECORD_MODE_NORMAL) {
+                    search("");
+                }
+                return true;
+            }
+        });
     }
 
     @Override
@@ -223,21 +474,36 @@ public class CodeRecordsFragment extends BackPressFragment {
 
     private void removeSelectedItems() {
         final List<SmsMsg> itemsToRemove = mCodeRecordAdapter.removeSelectedItems();
+        final List<Long> idsToRemove = new ArrayList<>(itemsToRemove.size());
+        for (SmsMsg smsMsg : itemsToRemove) {
+            idsToRemove.add(smsMsg.getId());
+        }
+        mPendingRemovalIds.addAll(idsToRemove);
         String text = getString(R.string.some_items_removed, itemsToRemove.size());
         Snackbar snackbar = SnackbarHelper.makeLong(mRecyclerView, text);
         snackbar.addCallback(new Snackbar.Callback() {
             @Override
             public void onDismissed(Snackbar transientBottomBar, int event) {
                 if (event != DISMISS_EVENT_ACTION) {
-                    try {
-                        DBManager.get(mActivity).removeSmsMsgList(itemsToRemove);
-                    } catch (Exception e) {
-                        XLog.e("Error occurs when remove SMS records", e);
-                    }
+                    // 删除提交后才不再隐藏这些记录
+                    DBManager.get(mActivity).removeSmsMsgListAsync(itemsToRemove, new DBWriter.Callback<Void>() {
+                        @Override
+                        public void onSuccess(Void result) {
+                            mPendingRemovalIds.removeAll(idsToRemove);
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            XLog.e("Error occurs when remove SMS records", e);
+                            mPendingRemovalIds.removeAll(idsToRemove);
+                        }
+                    });
+                } else {
+                    mPendingRemovalIds.removeAll(idsToRemove);
                 }
             }
         });
-        snackbar.setAction(R.string.revoke, v -> mCodeRecordAdapter.addItems(itemsToRemove));
+        snackbar.setAction(R.string.revoke, v -> mCodeRecordAdapter.restoreItems(itemsToRemove));
         snackbar.show();
 
         mCurrentMode = RECORD_MODE_NORMAL;
@@ -8,6 +8,8 @@ public class RecordItem {
 
     private SmsMsg smsMsg;
     private boolean selected;
+    // matched fragment of search, null if not searching
+    private String snippet;
 
     RecordItem(SmsMsg smsMsg) {
         this.smsMsg = smsMsg;
@@ -17,6 +19,14 @@ public class RecordItem {
         return smsMsg;
     }
 
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
     public boolean isSelected() {
         return selected;
     }
@@ -30,6 +40,7 @@ public class RecordItem {
         return "RecordItem{" +
                 "smsMsg=" + smsMsg +
                 ", selected=" + selected +
+                ", snippet='" + snippet + '\'' +
                 '}';
     }
 
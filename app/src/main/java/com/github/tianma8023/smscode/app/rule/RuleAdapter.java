@@ -23,7 +23,9 @@ public class RuleAdapter extends BaseQuickAdapter<SmsCodeRule, BaseViewHolder> {
     protected void convert(BaseViewHolder helper, SmsCodeRule item) {
         helper.setText(R.id.rule_company_text_view, item.getCompany())
                 .setText(R.id.rule_keyword_text_view, item.getCodeKeyword())
-                .setText(R.id.rule_regex_text_view, item.getCodeRegex());
+                .setText(R.id.rule_regex_text_view, item.getCodeRegex())
+                // 正则执行超时的规则已被隔离
+                .setGone(R.id.rule_quarantined_text_view, item.getQuarantined());
     }
 
     public void setContextMenuListener(OnCreateItemContextMenuListener contextMenuListener) {
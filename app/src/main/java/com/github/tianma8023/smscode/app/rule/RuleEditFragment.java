@@ -21,10 +21,12 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.constant.Const;
 import com.github.tianma8023.smscode.db.DBManager;
+import com.github.tianma8023.smscode.db.DBWriter;
 import com.github.tianma8023.smscode.entity.SmsCodeRule;
 import com.github.tianma8023.smscode.event.Event;
 import com.github.tianma8023.smscode.event.XEventBus;
 import com.github.tianma8023.smscode.utils.Utils;
+import com.github.tianma8023.smscode.utils.XLog;
 import com.google.android.material.textfield.TextInputEditText;
 
 import org.greenrobot.eventbus.Subscribe;
@@ -254,13 +256,24 @@ public class RuleEditFragment extends Fragment {
             if (duplicate) {
                 Toast.makeText(mActivity, R.string.rule_duplicated_prompt, Toast.LENGTH_LONG).show();
             } else {
-                long id = dbManager.addSmsCodeRule(mCodeRule);
-                mCodeRule.setId(id);
-                XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
-                mActivity.onBackPressed();
+                dbManager.addSmsCodeRuleAsync(mCodeRule, new DBWriter.Callback<Long>() {
+                    @Override
+                    public void onSuccess(Long id) {
+                        mCodeRule.setId(id);
+                        XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
+                        if (isAdded()) {
+                            mActivity.onBackPressed();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        XLog.e("Add " + mCodeRule + " failed", e);
+                    }
+                });
             }
         } else if (mRuleEditType == EDIT_TYPE_UPDATE) {
-            dbManager.updateSmsCodeRule(mCodeRule);
+            dbManager.updateSmsCodeRuleAsync(mCodeRule, null);
             XEventBus.post(new Event.OnRuleCreateOrUpdate(mRuleEditType, mCodeRule));
             mActivity.onBackPressed();
         }
@@ -27,6 +27,7 @@ import com.github.tianma8023.smscode.backup.BackupManager;
 import com.github.tianma8023.smscode.backup.ExportResult;
 import com.github.tianma8023.smscode.backup.ImportResult;
 import com.github.tianma8023.smscode.db.DBManager;
+import com.github.tianma8023.smscode.db.DBWriter;
 import com.github.tianma8023.smscode.entity.SmsCodeRule;
 import com.github.tianma8023.smscode.event.Event;
 import com.github.tianma8023.smscode.event.XEventBus;
@@ -284,11 +285,16 @@ public class RuleListFragment extends Fragment {
             @Override
             public void onDismissed(Snackbar transientBottomBar, int event) {
                 if (event != DISMISS_EVENT_ACTION) {
-                    try {
-                        DBManager.get(mActivity).removeSmsCodeRule(itemToRemove);
-                    } catch (Exception e) {
-                        XLog.e("Remove " + itemToRemove.toString() + " failed", e);
-                    }
+                    DBManager.get(mActivity).removeSmsCodeRuleAsync(itemToRemove, new DBWriter.Callback<Void>() {
+                        @Override
+                        public void onSuccess(Void result) {
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            XLog.e("Remove " + itemToRemove.toString() + " failed", e);
+                        }
+                    });
                 }
             }
         });
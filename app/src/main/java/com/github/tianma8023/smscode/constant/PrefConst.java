@@ -45,6 +45,9 @@ public interface PrefConst {
     String NOTIFICATION_RETENTION_TIME = "pref_notification_retention_time";
     String NOTIFICATION_RETENTION_TIME_DEFAULT = "5";
 
+    String WARM_IDLE_TIME = "pref_warm_idle_time";
+    String WARM_IDLE_TIME_DEFAULT = "0";
+
 
     String SMSCODE_KEYWORDS = "pref_smscode_keywords";
     String SMSCODE_KEYWORDS_DEFAULT = SmsCodeConst.VERIFICATION_KEYWORDS_REGEX;
@@ -81,8 +84,15 @@ public interface PrefConst {
     String VERBOSE_LOG_MODE = "pref_verbose_log_mode";
     boolean VERBOSE_LOG_MODE_DEFAULT = false;
 
+    String ENTRY_DIAGNOSTICS = "pref_entry_diagnostics";
+
     String ENABLE_CODE_RECORDS = "pref_enable_code_records";
     boolean ENABLE_CODE_RECORDS_DEFAULT = true;
-    int MAX_SMS_RECORDS_COUNT_DEFAULT = 10;
+    // 最多保留的记录条数
+    String RECORDS_MAX_COUNT = "pref_records_max_count";
+    String RECORDS_MAX_COUNT_DEFAULT = "10";
+    // 记录保留天数，0表示不限
+    String RECORDS_MAX_AGE = "pref_records_max_age";
+    String RECORDS_MAX_AGE_DEFAULT = "0";
     String ENTRY_CODE_RECORDS = "pref_entry_code_records";
 }
@@ -9,10 +9,21 @@ import com.github.tianma8023.smscode.entity.SmsCodeRule;
 import com.github.tianma8023.smscode.entity.SmsCodeRuleDao;
 import com.github.tianma8023.smscode.entity.SmsMsg;
 import com.github.tianma8023.smscode.entity.SmsMsgDao;
+import com.github.tianma8023.smscode.parser.CodeRule;
+import com.github.tianma8023.smscode.parser.RuleIndex;
+import com.github.tianma8023.smscode.parser.RuleQuarantine;
 
 import org.greenrobot.greendao.AbstractDao;
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.query.QueryBuilder;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
 
 /**
  * Database Manager for GreenDao
@@ -25,9 +36,18 @@ public class DBManager {
 
     private DaoSession mDaoSession;
 
+    // 所有写入都经由此单一写线程，第一次写入时才创建，只读的进程不启动写线程
+    private volatile DBWriter mWriter;
+
+    // 自定义规则索引，规则表改变后重建
+    private volatile RuleIndex mSmsCodeRuleIndex;
+    private final Object mRuleIndexLock = new Object();
+
     private DBManager(Context context) {
         TSQLiteOpenHelper openHelper =
                 new TSQLiteOpenHelper(context.getApplicationContext(), DB_NAME);
+        // WAL 模式下读取不会被写入阻塞，读到的是最近一次提交的数据
+        openHelper.setWriteAheadLoggingEnabled(true);
         SQLiteDatabase database = openHelper.getWritableDatabase();
         mDaoSession = new DaoMaster(database).newSession();
     }
@@ -43,6 +63,20 @@ public class DBManager {
         return sInstance;
     }
 
+    private DBWriter getWriter() {
+        DBWriter writer = mWriter;
+        if (writer == null) {
+            synchronized (this) {
+                writer = mWriter;
+                if (writer == null) {
+                    writer = new DBWriter(mDaoSession);
+                    mWriter = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
     private <T> AbstractDao getAbstractDao(Class<T> entityClass) {
         return mDaoSession.getDao(entityClass);
     }
@@ -86,16 +120,78 @@ public class DBManager {
         return mDaoSession.queryBuilder(entityClass).list();
     }
 
+    /**
+     * Restore ids of the rules after rollback, insert has set them to the ids of the rolled back rows
+     */
+    private static Runnable ruleIdRestorer(final List<SmsCodeRule> rules) {
+        final Long[] ids = new Long[rules.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rules.get(i).getId();
+        }
+        return () -> {
+            for (int i = 0; i < ids.length; i++) {
+                rules.get(i).setId(ids[i]);
+            }
+        };
+    }
+
+    /**
+     * Restore ids of the SMS after rollback, see {@link #ruleIdRestorer(List)}
+     */
+    private static Runnable smsMsgIdRestorer(final List<SmsMsg> smsMsgList) {
+        final Long[] ids = new Long[smsMsgList.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = smsMsgList.get(i).getId();
+        }
+        return () -> {
+            for (int i = 0; i < ids.length; i++) {
+                smsMsgList.get(i).setId(ids[i]);
+            }
+        };
+    }
+
+    /**
+     * Wait until all the queued writes commit, call it before the process may be killed.
+     *
+     * @return true if all the queued writes committed in time
+     */
+    public boolean flush(long timeoutMillis) {
+        DBWriter writer = mWriter;
+        return writer == null || writer.flush(timeoutMillis);
+    }
+
     public long addSmsCodeRule(SmsCodeRule smsCodeRule) {
-        return addEntity(SmsCodeRule.class, smsCodeRule);
+        return getWriter().execute(() -> addEntity(SmsCodeRule.class, smsCodeRule), this::onSmsCodeRulesChanged,
+                ruleIdRestorer(Collections.singletonList(smsCodeRule)));
+    }
+
+    public Future<Long> addSmsCodeRuleAsync(SmsCodeRule smsCodeRule, @Nullable DBWriter.Callback<Long> callback) {
+        return getWriter().enqueue(() -> addEntity(SmsCodeRule.class, smsCodeRule), this::onSmsCodeRulesChanged,
+                ruleIdRestorer(Collections.singletonList(smsCodeRule)), callback);
     }
 
     public void addSmsCodeRules(List<SmsCodeRule> smsCodeRules) {
-        addEntities(SmsCodeRule.class, smsCodeRules);
+        getWriter().execute(() -> {
+            addEntities(SmsCodeRule.class, smsCodeRules);
+            return null;
+        }, this::onSmsCodeRulesChanged, ruleIdRestorer(smsCodeRules));
     }
 
     public void updateSmsCodeRule(SmsCodeRule smsCodeRule) {
-        updateEntity(SmsCodeRule.class, smsCodeRule);
+        // 编辑后的规则重新启用
+        smsCodeRule.setQuarantined(false);
+        getWriter().execute(() -> {
+            updateEntity(SmsCodeRule.class, smsCodeRule);
+            return null;
+        }, () -> onSmsCodeRuleModified(smsCodeRule), null);
+    }
+
+    public Future<Void> updateSmsCodeRuleAsync(SmsCodeRule smsCodeRule, @Nullable DBWriter.Callback<Void> callback) {
+        smsCodeRule.setQuarantined(false);
+        return getWriter().enqueue(() -> {
+            updateEntity(SmsCodeRule.class, smsCodeRule);
+            return null;
+        }, () -> onSmsCodeRuleModified(smsCodeRule), null, callback);
     }
 
     public List<SmsCodeRule> queryAllSmsCodeRules() {
@@ -117,28 +213,173 @@ public class DBManager {
     }
 
     public void removeSmsCodeRule(SmsCodeRule smsCodeRule) {
-        removeEntity(SmsCodeRule.class, smsCodeRule);
+        getWriter().execute(() -> {
+            removeEntity(SmsCodeRule.class, smsCodeRule);
+            return null;
+        }, () -> onSmsCodeRuleModified(smsCodeRule), null);
+    }
+
+    public Future<Void> removeSmsCodeRuleAsync(SmsCodeRule smsCodeRule, @Nullable DBWriter.Callback<Void> callback) {
+        return getWriter().enqueue(() -> {
+            removeEntity(SmsCodeRule.class, smsCodeRule);
+            return null;
+        }, () -> onSmsCodeRuleModified(smsCodeRule), null, callback);
     }
 
     public void removeAllSmsCodeRules() {
-        removeAll(SmsCodeRule.class);
+        getWriter().execute(() -> {
+            removeAll(SmsCodeRule.class);
+            return null;
+        }, () -> {
+            RuleQuarantine.releaseAll();
+            onSmsCodeRulesChanged();
+        }, null);
+    }
+
+    /**
+     * Get the index of all custom rules, it's loaded from database only once
+     * and rebuilt after the rule table changes.
+     */
+    public RuleIndex getSmsCodeRuleIndex() {
+        RuleIndex ruleIndex = mSmsCodeRuleIndex;
+        if (ruleIndex == null) {
+            synchronized (mRuleIndexLock) {
+                ruleIndex = mSmsCodeRuleIndex;
+                if (ruleIndex == null) {
+                    List<SmsCodeRule> smsCodeRules = queryAllSmsCodeRules();
+                    List<CodeRule> codeRules = new ArrayList<>(smsCodeRules.size());
+                    for (SmsCodeRule rule : smsCodeRules) {
+                        codeRules.add(new CodeRule(rule.getId(), rule.getCompany(),
+                                rule.getCodeKeyword(), rule.getCodeRegex(), rule.getQuarantined()));
+                    }
+                    ruleIndex = RuleIndex.build(codeRules);
+                    mSmsCodeRuleIndex = ruleIndex;
+                }
+            }
+        }
+        return ruleIndex;
+    }
+
+    /**
+     * Persist the quarantine of the rule so that it's still skipped after restart.
+     */
+    public void quarantineSmsCodeRule(final Long ruleId) {
+        final SmsCodeRuleDao dao = mDaoSession.getSmsCodeRuleDao();
+        // 缓存中的规则实体已过期，提交后清除
+        getWriter().enqueue(() -> {
+            dao.getDatabase().execSQL("UPDATE " + SmsCodeRuleDao.TABLENAME + " SET " +
+                    SmsCodeRuleDao.Properties.Quarantined.columnName + " = 1 WHERE " +
+                    SmsCodeRuleDao.Properties.Id.columnName + " = ?", new Object[]{ruleId});
+            return null;
+        }, () -> {
+            dao.detachAll();
+            onSmsCodeRulesChanged();
+        }, null, null);
+    }
+
+    /**
+     * The rule is updated or removed, give it another chance.
+     */
+    private void onSmsCodeRuleModified(SmsCodeRule smsCodeRule) {
+        RuleQuarantine.release(smsCodeRule.getId());
+        onSmsCodeRulesChanged();
+    }
+
+    /**
+     * Rule table changed, the rule index is outdated.
+     */
+    private void onSmsCodeRulesChanged() {
+        synchronized (mRuleIndexLock) {
+            mSmsCodeRuleIndex = null;
+        }
     }
 
     public void addSmsMsg(SmsMsg smsMsg) {
-        addEntity(SmsMsg.class, smsMsg);
+        getWriter().execute(() -> addEntity(SmsMsg.class, smsMsg), null,
+                smsMsgIdRestorer(Collections.singletonList(smsMsg)));
+    }
+
+    public Future<Long> addSmsMsgAsync(SmsMsg smsMsg, @Nullable DBWriter.Callback<Long> callback) {
+        return getWriter().enqueue(() -> addEntity(SmsMsg.class, smsMsg), null,
+                smsMsgIdRestorer(Collections.singletonList(smsMsg)), callback);
     }
 
     public void addSmsMsgList(List<SmsMsg> smsMsgList) {
-        addEntities(SmsMsg.class, smsMsgList);
+        getWriter().execute(() -> {
+            addEntities(SmsMsg.class, smsMsgList);
+            return null;
+        }, null, smsMsgIdRestorer(smsMsgList));
+    }
+
+    /**
+     * Add SMS records and remove the outdated ones in one transaction.
+     * Outdated records are removed by SQL, no entity is loaded.
+     *
+     * @param maxCount   max count of records to keep, 0 if unlimited
+     * @param maxAgeDays max days to keep records, 0 if unlimited
+     */
+    public void addSmsMsgRecords(final List<SmsMsg> smsMsgList, final int maxCount, final int maxAgeDays) {
+        final SmsMsgDao dao = mDaoSession.getSmsMsgDao();
+        final Database database = dao.getDatabase();
+        final String table = SmsMsgDao.TABLENAME;
+        final String id = SmsMsgDao.Properties.Id.columnName;
+        final String date = SmsMsgDao.Properties.Date.columnName;
+        // 删除的记录可能仍在缓存中，提交后清除
+        getWriter().execute(() -> {
+            addEntities(SmsMsg.class, smsMsgList);
+            if (maxCount > 0) {
+                database.execSQL("DELETE FROM " + table + " WHERE " + id + " NOT IN (SELECT " + id +
+                        " FROM " + table + " ORDER BY " + date + " DESC LIMIT ?)", new Object[]{maxCount});
+            }
+            if (maxAgeDays > 0) {
+                long minDate = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+                database.execSQL("DELETE FROM " + table + " WHERE " + date + " < ?", new Object[]{minDate});
+            }
+            return null;
+        }, dao::detachAll, smsMsgIdRestorer(smsMsgList));
     }
 
-    public List<SmsMsg> queryAllSmsMsg() {
-        return mDaoSession.queryBuilder(SmsMsg.class)
-                .orderDesc(SmsMsgDao.Properties.Date)
+    /**
+     * Query one page of SMS records, newest first.
+     * Pages are keyed by (date, id) of the last record, so every page is an index range scan.
+     *
+     * @param anchor   last record of the previous page, null for the first page
+     * @param pageSize max count of records in this page
+     */
+    public List<SmsMsg> querySmsMsgPage(@Nullable SmsMsg anchor, int pageSize) {
+        QueryBuilder<SmsMsg> queryBuilder = mDaoSession.queryBuilder(SmsMsg.class);
+        if (anchor != null) {
+            queryBuilder.whereOr(SmsMsgDao.Properties.Date.lt(anchor.getDate()),
+                    queryBuilder.and(SmsMsgDao.Properties.Date.eq(anchor.getDate()),
+                            SmsMsgDao.Properties.Id.lt(anchor.getId())));
+        }
+        return queryBuilder
+                .orderDesc(SmsMsgDao.Properties.Date, SmsMsgDao.Properties.Id)
+                .limit(pageSize)
                 .list();
     }
 
+    /**
+     * Full-text search SMS records by body, company and sender, newest first.
+     *
+     * @param input terms separated by whitespace, the last term matches as prefix
+     * @param limit max count of matches
+     */
+    public List<SmsSearchIndex.Match> searchSmsMsg(String input, int limit) {
+        return SmsSearchIndex.search(mDaoSession.getSmsMsgDao(), input, limit);
+    }
+
     public void removeSmsMsgList(List<SmsMsg> smsMsgList) {
-        removeEntities(SmsMsg.class, smsMsgList);
+        getWriter().execute(() -> {
+            removeEntities(SmsMsg.class, smsMsgList);
+            return null;
+        }, null, null);
+    }
+
+    public Future<Void> removeSmsMsgListAsync(List<SmsMsg> smsMsgList, @Nullable DBWriter.Callback<Void> callback) {
+        return getWriter().enqueue(() -> {
+            removeEntities(SmsMsg.class, smsMsgList);
+            return null;
+        }, null, null, callback);
     }
 }
@@ -0,0 +1,341 @@
+package com.github.tianma8023.smscode.db;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.github.tianma8023.smscode.entity.DaoSession;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import org.greenrobot.greendao.DaoException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The only writer of the database.
+ * <p>
+ * Writes are queued and run one by one on a background thread, writes queued within
+ * a short window are committed in one transaction. Results are delivered by the returned
+ * future or by the callback on main thread, after the transaction commits.
+ * <p>
+ * A write can be cancelled by its future until the writer starts it.
+ */
+public class DBWriter {
+
+    // 收集同一事务中写入的时间窗口
+    private static final long COALESCE_WINDOW_MILLIS = 10;
+    private static final int MAX_BATCH_SIZE = 64;
+    // 同步写入等待期间检查写线程是否存活的间隔
+    private static final long ALIVE_CHECK_MILLIS = 1000;
+
+    /**
+     * Callback of a write, invoked on main thread
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Exception e);
+    }
+
+    /**
+     * A write to run in the writer's transaction
+     */
+    interface Write<T> {
+        T run() throws Exception;
+    }
+
+    private final DaoSession mDaoSession;
+    private final BlockingQueue<Op<?>> mQueue = new LinkedBlockingQueue<>();
+    private final Thread mThread;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    DBWriter(DaoSession daoSession) {
+        mDaoSession = daoSession;
+        mThread = new Thread(this::loop, "DBWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queue a write.
+     *
+     * @param afterCommit   run on writer thread after the transaction commits, may be null
+     * @param afterRollback run on writer thread after the transaction rolls back, restores
+     *                      the entities changed by the write, e.g. ids set by insert. May be null
+     * @param callback      may be null
+     */
+    <T> Future<T> enqueue(Write<T> write, Runnable afterCommit, Runnable afterRollback, Callback<T> callback) {
+        Op<T> op = new Op<>(write, afterCommit, afterRollback, callback, false);
+        submit(op);
+        return op;
+    }
+
+    /**
+     * Queue a write and wait until it commits.
+     *
+     * @see #enqueue(Write, Runnable, Runnable, Callback)
+     */
+    <T> T execute(Write<T> write, Runnable afterCommit, Runnable afterRollback) {
+        if (Thread.currentThread() == mThread) {
+            throw new IllegalStateException("Can't wait for a write on the writer thread");
+        }
+        // 调用方在等待，写线程不再等待合并后续写入
+        Op<T> op = new Op<>(write, afterCommit, afterRollback, null, true);
+        submit(op);
+        try {
+            while (true) {
+                try {
+                    return op.get(ALIVE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // 写线程已退出则不会再完成写入，不再等待
+                    if (!mThread.isAlive()) {
+                        throw new DaoException("DBWriter thread is dead");
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new DaoException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Wait until all the queued writes commit, e.g. before process may be killed.
+     *
+     * @return true if all the queued writes committed in time
+     */
+    boolean flush(long timeoutMillis) {
+        if (Thread.currentThread() == mThread) {
+            return false;
+        }
+        Op<Void> barrier = new Op<>(() -> null, null, null, null, true);
+        submit(barrier);
+        try {
+            barrier.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private void submit(Op<?> op) {
+        mQueue.add(op);
+        if (!mThread.isAlive()) {
+            op.fail(new DaoException("DBWriter thread is dead"));
+        }
+    }
+
+    private void loop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        List<Op<?>> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(mQueue.take());
+                mQueue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                // 只有连续写入时才等待合并，单个写入或有调用方在等待时立即提交
+                if (batch.size() > 1 && !hasBlocking(batch)) {
+                    long deadline = SystemClock.uptimeMillis() + COALESCE_WINDOW_MILLIS;
+                    while (batch.size() < MAX_BATCH_SIZE) {
+                        long remaining = deadline - SystemClock.uptimeMillis();
+                        Op<?> op = remaining > 0 ? mQueue.poll(remaining, TimeUnit.MILLISECONDS) : mQueue.poll();
+                        if (op == null) {
+                            break;
+                        }
+                        batch.add(op);
+                        if (op.mBlocking) {
+                            break;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 提交已收集的写入
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Throwable t) {
+                    // 写线程不能退出，否则之后的写入永远不会完成
+                    XLog.e("DBWriter failed to commit {} writes", batch.size(), t);
+                    for (Op<?> op : batch) {
+                        op.fail(t);
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private static boolean hasBlocking(List<Op<?>> batch) {
+        for (Op<?> op : batch) {
+            if (op.mBlocking) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commit(List<Op<?>> queued) {
+        // 已取消的写入不再执行，开始执行后不能再取消
+        final List<Op<?>> batch = new ArrayList<>(queued.size());
+        for (Op<?> op : queued) {
+            if (op.start()) {
+                batch.add(op);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            mDaoSession.callInTx(() -> {
+                for (Op<?> op : batch) {
+                    op.write();
+                }
+                return null;
+            });
+        } catch (Throwable e) {
+            rollback(batch);
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+                return;
+            }
+            // 任一写入失败都会回滚整个事务，逐个重新提交以隔离失败的写入
+            XLog.w("Batch of {} writes failed, commit them one by one", batch.size(), e);
+            for (Op<?> op : batch) {
+                try {
+                    mDaoSession.callInTx(() -> {
+                        op.write();
+                        return null;
+                    });
+                } catch (Throwable ex) {
+                    rollback(Collections.<Op<?>>singletonList(op));
+                    op.fail(ex);
+                    continue;
+                }
+                op.succeed();
+            }
+            return;
+        }
+        for (Op<?> op : batch) {
+            op.succeed();
+        }
+    }
+
+    /**
+     * The transaction rolled back, but the entities still carry the ids of the rolled back
+     * rows and stay in the identity scopes. Restore them before retry or failure.
+     */
+    private void rollback(List<Op<?>> ops) {
+        mDaoSession.clear();
+        for (Op<?> op : ops) {
+            op.rollback();
+        }
+    }
+
+    private static class Op<T> extends FutureTask<T> {
+
+        private final Write<T> mWrite;
+        private final Runnable mAfterCommit;
+        private final Runnable mAfterRollback;
+        private final Callback<T> mCallback;
+        // 调用方是否在等待结果
+        final boolean mBlocking;
+
+        private boolean mStarted;
+        private T mResult;
+
+        Op(Write<T> write, Runnable afterCommit, Runnable afterRollback, Callback<T> callback, boolean blocking) {
+            // 由写线程在事务提交后设置结果，不会被执行
+            super(() -> {
+                throw new IllegalStateException("Op is completed by the writer");
+            });
+            mWrite = write;
+            mAfterCommit = afterCommit;
+            mAfterRollback = afterRollback;
+            mCallback = callback;
+            mBlocking = blocking;
+        }
+
+        /**
+         * @return false if the op has been cancelled
+         */
+        synchronized boolean start() {
+            if (isCancelled()) {
+                return false;
+            }
+            mStarted = true;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            // 写入开始后可能已提交，不能再取消
+            return !mStarted && super.cancel(mayInterruptIfRunning);
+        }
+
+        void write() throws Exception {
+            mResult = mWrite.run();
+        }
+
+        void succeed() {
+            if (mAfterCommit != null) {
+                try {
+                    mAfterCommit.run();
+                } catch (Throwable t) {
+                    // 写入已提交，但提交后的处理失败，交给调用方
+                    XLog.e("After commit of the write failed", t);
+                    setException(t);
+                    return;
+                }
+            }
+            set(mResult);
+        }
+
+        void rollback() {
+            mResult = null;
+            if (mAfterRollback != null) {
+                mAfterRollback.run();
+            }
+        }
+
+        void fail(Throwable t) {
+            setException(t);
+        }
+
+        @Override
+        protected void done() {
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+            sMainHandler.post(() -> {
+                try {
+                    mCallback.onSuccess(get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    mCallback.onFailure(cause instanceof Exception ? (Exception) cause : new DaoException(cause));
+                } catch (InterruptedException e) {
+                    // completed, never happens
+                }
+            });
+        }
+    }
+}
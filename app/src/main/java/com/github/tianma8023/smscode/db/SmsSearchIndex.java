@@ -0,0 +1,321 @@
+package com.github.tianma8023.smscode.db;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.entity.SmsMsgDao;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.internal.SqlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text search index of SMS records.
+ * <p>
+ * FTS tokenizers take a run of CJK characters as one token, so sender, body and company
+ * are converted to search grams (see {@link #toGrams(String...)}) and kept in the
+ * SEARCH_GRAMS column of SMS_MSG. An FTS4 external content table indexes that column,
+ * it's kept in sync by triggers so the DAO needn't know about it.
+ */
+public class SmsSearchIndex {
+
+    static final String TABLENAME = "SMS_MSG_FTS";
+
+    // 高亮片段的起止标记
+    public static final char SNIPPET_START = '\u0002';
+    public static final char SNIPPET_END = '\u0003';
+    private static final String SNIPPET_ELLIPSIS = "…";
+    // 片段的长度，及首个匹配前保留的字符数
+    private static final int SNIPPET_CHARS = 48;
+    private static final int SNIPPET_LEADING_CHARS = 12;
+
+    // 索引内容已按字切分，不需要 icu 分词
+    private static final String[] TOKENIZERS = {"unicode61", "simple"};
+
+    private SmsSearchIndex() {
+    }
+
+    /**
+     * A record matched by the search
+     */
+    public static class Match {
+        public final SmsMsg smsMsg;
+        // matched fragment, matched terms are enclosed by SNIPPET_START and SNIPPET_END
+        public final String snippet;
+
+        Match(SmsMsg smsMsg, String snippet) {
+            this.smsMsg = smsMsg;
+            this.snippet = snippet;
+        }
+    }
+
+    /**
+     * Create the index table and its triggers if not exist
+     */
+    static void create(Database db) {
+        String table = SmsMsgDao.TABLENAME;
+        String grams = SmsMsgDao.Properties.SearchGrams.columnName;
+
+        SQLException lastError = null;
+        for (String tokenizer : TOKENIZERS) {
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLENAME + " USING fts4(" +
+                        grams + ", content=\"" + table + "\", tokenize=" + tokenizer + ");");
+                lastError = null;
+                break;
+            } catch (SQLException e) {
+                XLog.w("FTS tokenizer {} is unavailable", tokenizer, e);
+                lastError = e;
+            }
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+
+        String newValues = "new._id, new." + grams;
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLENAME + "_BU BEFORE UPDATE ON \"" + table + "\" BEGIN " +
+                "DELETE FROM " + TABLENAME + " WHERE docid = old._id; END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLENAME + "_BD BEFORE DELETE ON \"" + table + "\" BEGIN " +
+                "DELETE FROM " + TABLENAME + " WHERE docid = old._id; END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLENAME + "_AU AFTER UPDATE ON \"" + table + "\" BEGIN " +
+                "INSERT INTO " + TABLENAME + "(docid, " + grams + ") VALUES(" + newValues + "); END;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLENAME + "_AI AFTER INSERT ON \"" + table + "\" BEGIN " +
+                "INSERT INTO " + TABLENAME + "(docid, " + grams + ") VALUES(" + newValues + "); END;");
+    }
+
+    /**
+     * Drop the index table and its triggers if exist
+     */
+    static void drop(Database db) {
+        for (String trigger : new String[]{"_BU", "_BD", "_AU", "_AI"}) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + TABLENAME + trigger + ";");
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TABLENAME + ";");
+    }
+
+    /**
+     * Rebuild the index from existing records
+     */
+    static void rebuild(Database db) {
+        db.execSQL("INSERT INTO " + TABLENAME + "(" + TABLENAME + ") VALUES('rebuild');");
+    }
+
+    /**
+     * Search records whose sender, body or company contains all the terms of the input,
+     * the last term matches as prefix. Ordered by date then id, newest first.
+     */
+    static List<Match> search(SmsMsgDao dao, String input, int limit) {
+        List<Match> matches = new ArrayList<>();
+        List<String> terms = toTerms(input);
+        String matchQuery = toMatchQuery(terms);
+        if (matchQuery.isEmpty()) {
+            return matches;
+        }
+
+        String date = SmsMsgDao.Properties.Date.columnName;
+        StringBuilder sql = new StringBuilder("SELECT ");
+        SqlUtils.appendColumns(sql, "T", dao.getAllColumns());
+        // 命中的 docid 集合作为过滤条件，按日期索引倒序扫描，与分页列表的顺序一致
+        sql.append(" FROM \"").append(SmsMsgDao.TABLENAME).append("\" T")
+                .append(" WHERE T._id IN (SELECT docid FROM ").append(TABLENAME)
+                .append(" WHERE ").append(TABLENAME).append(" MATCH ?)")
+                .append(" ORDER BY T.\"").append(date).append("\" DESC, T._id DESC LIMIT ").append(limit);
+
+        try (Cursor cursor = dao.getDatabase().rawQuery(sql.toString(), new String[]{matchQuery})) {
+            while (cursor.moveToNext()) {
+                SmsMsg smsMsg = dao.readEntity(cursor, 0);
+                matches.add(new Match(smsMsg, makeSnippet(smsMsg, terms)));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Convert texts to search grams: every run of CJK characters becomes its overlapping
+     * bigrams followed by its last character, other runs of letters or digits are kept
+     * as words, e.g. "您的验证码是384729" becomes "您的 的验 验证 证码 码是 是 384729".
+     * <p>
+     * A CJK substring of two or more characters is then a phrase of consecutive bigrams,
+     * and a single character is a prefix of some gram.
+     */
+    public static String toGrams(String... texts) {
+        StringBuilder sb = new StringBuilder();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            List<String> tokens = new ArrayList<>();
+            appendGrams(text, true, tokens);
+            for (String token : tokens) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(token);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param fullRuns false if the text is a query term: the trailing char of the last CJK run is
+     *                 dropped, since the text may continue in the record
+     */
+    private static void appendGrams(String text, boolean fullRuns, List<String> tokens) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int end = i + 1;
+                while (end < length && isCjk(text.charAt(end))) {
+                    end++;
+                }
+                for (int j = i; j + 1 < end; j++) {
+                    tokens.add(text.substring(j, j + 2));
+                }
+                if (fullRuns || end < length || end - i == 1) {
+                    tokens.add(text.substring(end - 1, end));
+                }
+                i = end;
+            } else if (Character.isLetterOrDigit(c)) {
+                int end = i + 1;
+                while (end < length && Character.isLetterOrDigit(text.charAt(end)) && !isCjk(text.charAt(end))) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return Character.isIdeographic(c) ||
+                block == Character.UnicodeBlock.HIRAGANA ||
+                block == Character.UnicodeBlock.KATAKANA ||
+                block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+
+    /**
+     * Split user input into terms, quotes are dropped.
+     */
+    static List<String> toTerms(String input) {
+        List<String> terms = new ArrayList<>();
+        if (input == null) {
+            return terms;
+        }
+        for (String term : input.replace("\"", " ").trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Convert terms to FTS MATCH expression: every term becomes a quoted phrase of its
+     * search grams so that FTS operators in input are treated as text. A single trailing
+     * CJK char and the last word of the input match as prefix.
+     */
+    static String toMatchQuery(List<String> terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            List<String> tokens = new ArrayList<>();
+            appendGrams(term, false, tokens);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('"');
+            for (int j = 0; j < tokens.size(); j++) {
+                String token = tokens.get(j);
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                sb.append(token);
+                boolean last = j == tokens.size() - 1;
+                // 单个汉字可能是某个双字词的开头
+                boolean singleCjk = token.length() == 1 && isCjk(token.charAt(0));
+                if (last && (singleCjk || i == terms.size() - 1)) {
+                    sb.append('*');
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A fragment of the first field containing the terms, terms are enclosed by
+     * SNIPPET_START and SNIPPET_END.
+     */
+    private static String makeSnippet(SmsMsg smsMsg, List<String> terms) {
+        String text = "";
+        int first = -1;
+        for (String field : new String[]{smsMsg.getBody(), smsMsg.getCompany(), smsMsg.getSender()}) {
+            if (field == null) {
+                continue;
+            }
+            for (String term : terms) {
+                int index = indexOfIgnoreCase(field, term);
+                if (index >= 0 && (first < 0 || index < first)) {
+                    first = index;
+                }
+            }
+            if (first >= 0) {
+                text = field;
+                break;
+            }
+        }
+        if (first < 0) {
+            text = smsMsg.getBody() == null ? "" : smsMsg.getBody();
+            first = 0;
+        }
+
+        int start = Math.max(0, first - SNIPPET_LEADING_CHARS);
+        int end = Math.min(text.length(), start + SNIPPET_CHARS);
+        StringBuilder sb = new StringBuilder();
+        if (start > 0) {
+            sb.append(SNIPPET_ELLIPSIS);
+        }
+        int i = start;
+        while (i < end) {
+            int matchedLength = 0;
+            for (String term : terms) {
+                if (term.length() > matchedLength && i + term.length() <= end &&
+                        text.regionMatches(true, i, term, 0, term.length())) {
+                    matchedLength = term.length();
+                }
+            }
+            if (matchedLength > 0) {
+                sb.append(SNIPPET_START).append(text, i, i + matchedLength).append(SNIPPET_END);
+                i += matchedLength;
+            } else {
+                sb.append(text.charAt(i));
+                i++;
+            }
+        }
+        if (end < text.length()) {
+            sb.append(SNIPPET_ELLIPSIS);
+        }
+        return sb.toString();
+    }
+
+    private static int indexOfIgnoreCase(String text, String term) {
+        for (int i = 0; i + term.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, term, 0, term.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,17 +1,25 @@
 package com.github.tianma8023.smscode.db;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.github.tianma8023.smscode.entity.DaoMaster;
 import com.github.tianma8023.smscode.entity.SmsCodeRuleDao;
 import com.github.tianma8023.smscode.entity.SmsMsgDao;
+import com.github.tianma8023.smscode.utils.StringUtils;
 import com.github.yuweiguocn.library.greendao.MigrationHelper;
 
 import org.greenrobot.greendao.database.Database;
+import org.greenrobot.greendao.database.DatabaseStatement;
 
 public class TSQLiteOpenHelper extends DaoMaster.OpenHelper{
 
+    // 从此版本起增量升级，更早的版本重建全部表
+    private static final int VERSION_INCREMENTAL_BASE = 6;
+    // 从此版本起有全文搜索索引
+    private static final int VERSION_SEARCH_INDEX = 10;
+
     public TSQLiteOpenHelper(Context context, String name) {
         super(context, name);
     }
@@ -20,11 +28,42 @@ public class TSQLiteOpenHelper extends DaoMaster.OpenHelper{
         super(context, name, factory);
     }
 
-    @SuppressWarnings("unchecked")
+    @Override
+    public void onCreate(Database db) {
+        super.onCreate(db);
+        SmsSearchIndex.create(db);
+    }
+
     @Override
     public void onUpgrade(Database db, int oldVersion, int newVersion) {
         super.onUpgrade(db, oldVersion, newVersion);
 
+        if (oldVersion < VERSION_SEARCH_INDEX) {
+            // 旧的索引及触发器不再适用，先删除以免回填时触发
+            SmsSearchIndex.drop(db);
+        }
+        if (oldVersion < VERSION_INCREMENTAL_BASE) {
+            recreateAllTables(db);
+        } else {
+            for (int version = oldVersion; version < newVersion; version++) {
+                upgradeFrom(db, version);
+            }
+        }
+        backfillBodyHash(db);
+        backfillSearchGrams(db);
+
+        if (oldVersion < VERSION_SEARCH_INDEX) {
+            // 重建表时触发器随旧表删除，统一在此创建并从现有记录建立索引
+            SmsSearchIndex.create(db);
+            SmsSearchIndex.rebuild(db);
+        }
+    }
+
+    /**
+     * 老版本通过 MigrationHelper 重建全部表并迁移数据
+     */
+    @SuppressWarnings("unchecked")
+    private void recreateAllTables(Database db) {
         MigrationHelper.migrate(db, new MigrationHelper.ReCreateAllTableListener() {
             @Override
             public void onCreateAllTables(Database db, boolean ifNotExists) {
@@ -37,4 +76,100 @@ public class TSQLiteOpenHelper extends DaoMaster.OpenHelper{
             }
         }, SmsCodeRuleDao.class, SmsMsgDao.class);
     }
+
+    /**
+     * 从 version 升级到 version + 1，只修改变化的部分，不重建表
+     */
+    private void upgradeFrom(Database db, int version) {
+        switch (version) {
+            case 6: {
+                // v7: parse details of the SMS code
+                String table = SmsMsgDao.TABLENAME;
+                db.execSQL("ALTER TABLE \"" + table + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.RuleId.columnName + "\" INTEGER;");
+                db.execSQL("ALTER TABLE \"" + table + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.CodeKeyword.columnName + "\" TEXT;");
+                db.execSQL("ALTER TABLE \"" + table + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.MatchLevel.columnName + "\" INTEGER NOT NULL DEFAULT 0;");
+                db.execSQL("ALTER TABLE \"" + table + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.ParseNanos.columnName + "\" INTEGER NOT NULL DEFAULT 0;");
+                break;
+            }
+            case 7: {
+                // v8: body hash column, date and (sender, date) indexes
+                String table = SmsMsgDao.TABLENAME;
+                db.execSQL("ALTER TABLE \"" + table + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.BodyHash.columnName + "\" INTEGER NOT NULL DEFAULT 0;");
+                db.execSQL("CREATE INDEX IF NOT EXISTS IDX_SMS_MSG_DATE ON \"" + table + "\" (\"" +
+                        SmsMsgDao.Properties.Date.columnName + "\" ASC);");
+                db.execSQL("CREATE INDEX IF NOT EXISTS IDX_SMS_MSG_SENDER_DATE ON \"" + table + "\" (\"" +
+                        SmsMsgDao.Properties.Sender.columnName + "\" ASC,\"" +
+                        SmsMsgDao.Properties.Date.columnName + "\" ASC);");
+                break;
+            }
+            case 8:
+                // v9: full-text search index, created after all the steps
+                break;
+            case 9:
+                // v10: search grams column, the index is recreated after all the steps
+                db.execSQL("ALTER TABLE \"" + SmsMsgDao.TABLENAME + "\" ADD COLUMN \"" +
+                        SmsMsgDao.Properties.SearchGrams.columnName + "\" TEXT;");
+                break;
+            case 10:
+                // v11: quarantine of custom rules
+                db.execSQL("ALTER TABLE \"" + SmsCodeRuleDao.TABLENAME + "\" ADD COLUMN \"" +
+                        SmsCodeRuleDao.Properties.Quarantined.columnName + "\" INTEGER NOT NULL DEFAULT 0;");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 为升级前的短信记录计算 body hash，MigrationHelper 迁移的记录可能为 NULL 或 ''
+     */
+    private void backfillBodyHash(Database db) {
+        String table = SmsMsgDao.TABLENAME;
+        String id = SmsMsgDao.Properties.Id.columnName;
+        String body = SmsMsgDao.Properties.Body.columnName;
+        String bodyHash = SmsMsgDao.Properties.BodyHash.columnName;
+        DatabaseStatement statement = db.compileStatement("UPDATE \"" + table + "\" SET \"" +
+                bodyHash + "\" = ? WHERE \"" + id + "\" = ?");
+        try (Cursor cursor = db.rawQuery("SELECT \"" + id + "\", \"" + body + "\" FROM \"" +
+                table + "\" WHERE \"" + bodyHash + "\" IS NULL OR \"" + bodyHash + "\" = 0 OR \"" +
+                bodyHash + "\" = ''", null)) {
+            while (cursor.moveToNext()) {
+                statement.bindLong(1, StringUtils.hash64(cursor.getString(1)));
+                statement.bindLong(2, cursor.getLong(0));
+                statement.execute();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * 为升级前的短信记录生成搜索用的 grams
+     */
+    private void backfillSearchGrams(Database db) {
+        String table = SmsMsgDao.TABLENAME;
+        String id = SmsMsgDao.Properties.Id.columnName;
+        String searchGrams = SmsMsgDao.Properties.SearchGrams.columnName;
+        DatabaseStatement statement = db.compileStatement("UPDATE \"" + table + "\" SET \"" +
+                searchGrams + "\" = ? WHERE \"" + id + "\" = ?");
+        try (Cursor cursor = db.rawQuery("SELECT \"" + id + "\", \"" +
+                SmsMsgDao.Properties.Sender.columnName + "\", \"" +
+                SmsMsgDao.Properties.Body.columnName + "\", \"" +
+                SmsMsgDao.Properties.Company.columnName + "\" FROM \"" + table + "\" WHERE \"" +
+                searchGrams + "\" IS NULL OR \"" + searchGrams + "\" = ''", null)) {
+            while (cursor.moveToNext()) {
+                statement.bindString(1, SmsSearchIndex.toGrams(
+                        cursor.getString(1), cursor.getString(2), cursor.getString(3)));
+                statement.bindLong(2, cursor.getLong(0));
+                statement.execute();
+            }
+        } finally {
+            statement.close();
+        }
+    }
 }
@@ -51,6 +51,11 @@ public class SmsCodeRule implements Parcelable {
     @NotNull
     private String codeRegex;
 
+    /**
+     * whether the regex timed out, a quarantined rule is skipped until it's edited
+     */
+    private boolean quarantined;
+
     public SmsCodeRule(String company, @NotNull String codeKeyword,
                        @NotNull String codeRegex) {
         this.company = company;
@@ -67,15 +72,17 @@ public class SmsCodeRule implements Parcelable {
         company = in.readString();
         codeKeyword = in.readString();
         codeRegex = in.readString();
+        quarantined = in.readByte() != 0;
     }
 
-    @Generated(hash = 1853112924)
+    @Generated(hash = 1141497211)
     public SmsCodeRule(Long id, String company, @NotNull String codeKeyword,
-            @NotNull String codeRegex) {
+            @NotNull String codeRegex, boolean quarantined) {
         this.id = id;
         this.company = company;
         this.codeKeyword = codeKeyword;
         this.codeRegex = codeRegex;
+        this.quarantined = quarantined;
     }
 
     @Generated(hash = 1135501737)
@@ -114,6 +121,14 @@ public class SmsCodeRule implements Parcelable {
         this.id = id;
     }
 
+    public boolean getQuarantined() {
+        return this.quarantined;
+    }
+
+    public void setQuarantined(boolean quarantined) {
+        this.quarantined = quarantined;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -145,6 +160,7 @@ public class SmsCodeRule implements Parcelable {
         dest.writeString(company);
         dest.writeString(codeKeyword);
         dest.writeString(codeRegex);
+        dest.writeByte((byte) (quarantined ? 1 : 0));
     }
 
     public static final Creator<SmsCodeRule> CREATOR = new Creator<SmsCodeRule>() {
@@ -164,6 +180,7 @@ public class SmsCodeRule implements Parcelable {
         this.company = newRule.company;
         this.codeKeyword = newRule.codeKeyword;
         this.codeRegex = newRule.codeRegex;
+        this.quarantined = newRule.quarantined;
     }
 
     @Override
@@ -3,13 +3,19 @@ package com.github.tianma8023.smscode.entity;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.github.tianma8023.smscode.db.SmsSearchIndex;
+import com.github.tianma8023.smscode.utils.StringUtils;
+
 import org.greenrobot.greendao.annotation.Entity;
 import org.greenrobot.greendao.annotation.Generated;
 import org.greenrobot.greendao.annotation.Id;
+import org.greenrobot.greendao.annotation.Index;
 
 import java.util.Objects;
 
-@Entity
+@Entity(indexes = {
+        @Index(value = "sender, date", name = "IDX_SMS_MSG_SENDER_DATE")
+})
 public class SmsMsg implements Parcelable {
 
     @Id(autoincrement = true)
@@ -21,7 +27,11 @@ public class SmsMsg implements Parcelable {
     // Message content
     private String body;
 
+    // Hash of the message content, see StringUtils.hash64
+    private long bodyHash;
+
     // Receive date
+    @Index(name = "IDX_SMS_MSG_DATE")
     private long date;
 
     // Company
@@ -30,6 +40,21 @@ public class SmsMsg implements Parcelable {
     // SMS Code
     private String smsCode;
 
+    // Id of the custom rule which parsed the code, null if parsed by the default rule
+    private Long ruleId;
+
+    // Keyword which locates the code
+    private String codeKeyword;
+
+    // Match level of the default rule, see CodeScanner.LEVEL_*
+    private int matchLevel;
+
+    // Nanoseconds spent on parsing
+    private long parseNanos;
+
+    // Search tokens of sender, body and company, indexed by full-text search, see SmsSearchIndex.toGrams
+    private String searchGrams;
+
     public SmsMsg() {
     }
 
@@ -41,28 +66,48 @@ public class SmsMsg implements Parcelable {
         }
         sender = source.readString();
         body = source.readString();
+        bodyHash = source.readLong();
         date = source.readLong();
         company = source.readString();
         smsCode = source.readString();
+        if (source.readByte() == 0) {
+            ruleId = null;
+        } else {
+            ruleId = source.readLong();
+        }
+        codeKeyword = source.readString();
+        matchLevel = source.readInt();
+        parseNanos = source.readLong();
+        searchGrams = source.readString();
     }
 
-    @Generated(hash = 1308161448)
-    public SmsMsg(Long id, String sender, String body, long date, String company,
-            String smsCode) {
+    @Generated(hash = 1577911168)
+    public SmsMsg(Long id, String sender, String body, long bodyHash, long date,
+            String company, String smsCode, Long ruleId, String codeKeyword,
+            int matchLevel, long parseNanos, String searchGrams) {
         this.id = id;
         this.sender = sender;
         this.body = body;
+        this.bodyHash = bodyHash;
         this.date = date;
         this.company = company;
         this.smsCode = smsCode;
+        this.ruleId = ruleId;
+        this.codeKeyword = codeKeyword;
+        this.matchLevel = matchLevel;
+        this.parseNanos = parseNanos;
+        this.searchGrams = searchGrams;
     }
 
     public void setSender(String sender) {
         this.sender = sender;
+        this.searchGrams = SmsSearchIndex.toGrams(sender, body, company);
     }
 
     public void setBody(String body) {
         this.body = body;
+        this.bodyHash = StringUtils.hash64(body);
+        this.searchGrams = SmsSearchIndex.toGrams(sender, body, company);
     }
 
     public void setDate(long date) {
@@ -71,6 +116,7 @@ public class SmsMsg implements Parcelable {
 
     public void setCompany(String company) {
         this.company = company;
+        this.searchGrams = SmsSearchIndex.toGrams(sender, body, company);
     }
 
     public void setSmsCode(String smsCode) {
@@ -85,6 +131,14 @@ public class SmsMsg implements Parcelable {
         return body;
     }
 
+    public long getBodyHash() {
+        return bodyHash;
+    }
+
+    public void setBodyHash(long bodyHash) {
+        this.bodyHash = bodyHash;
+    }
+
     public long getDate() {
         return date;
     }
@@ -97,6 +151,46 @@ public class SmsMsg implements Parcelable {
         return smsCode;
     }
 
+    public Long getRuleId() {
+        return ruleId;
+    }
+
+    public void setRuleId(Long ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    public String getCodeKeyword() {
+        return codeKeyword;
+    }
+
+    public void setCodeKeyword(String codeKeyword) {
+        this.codeKeyword = codeKeyword;
+    }
+
+    public int getMatchLevel() {
+        return matchLevel;
+    }
+
+    public void setMatchLevel(int matchLevel) {
+        this.matchLevel = matchLevel;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public void setParseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+    }
+
+    public String getSearchGrams() {
+        return searchGrams;
+    }
+
+    public void setSearchGrams(String searchGrams) {
+        this.searchGrams = searchGrams;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -112,9 +206,20 @@ public class SmsMsg implements Parcelable {
         }
         dest.writeString(sender);
         dest.writeString(body);
+        dest.writeLong(bodyHash);
         dest.writeLong(date);
         dest.writeString(company);
         dest.writeString(smsCode);
+        if (ruleId == null) {
+            dest.writeByte((byte) 0);
+        } else {
+            dest.writeByte((byte) 1);
+            dest.writeLong(ruleId);
+        }
+        dest.writeString(codeKeyword);
+        dest.writeInt(matchLevel);
+        dest.writeLong(parseNanos);
+        dest.writeString(searchGrams);
     }
 
     public Long getId() {
@@ -145,6 +250,10 @@ public class SmsMsg implements Parcelable {
                 ", date=" + date +
                 ", company='" + company + '\'' +
                 ", smsCode='" + smsCode + '\'' +
+                ", ruleId=" + ruleId +
+                ", codeKeyword='" + codeKeyword + '\'' +
+                ", matchLevel=" + matchLevel +
+                ", parseNanos=" + parseNanos +
                 '}';
     }
 
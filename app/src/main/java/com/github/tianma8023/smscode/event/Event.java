@@ -2,9 +2,12 @@ package com.github.tianma8023.smscode.event;
 
 import com.github.tianma8023.smscode.app.rule.RuleEditFragment;
 import com.github.tianma8023.smscode.backup.ExportResult;
+import com.github.tianma8023.smscode.db.SmsSearchIndex;
 import com.github.tianma8023.smscode.entity.SmsCodeRule;
+import com.github.tianma8023.smscode.entity.SmsMsg;
 
 import java.io.File;
+import java.util.List;
 
 public class Event {
 
@@ -60,4 +63,39 @@ public class Event {
             this.template = template;
         }
     }
+
+    /**
+     * SMS records page load event
+     */
+    public static class RecordPageLoadEvent {
+        // generation of the loading, results of outdated loading are dropped
+        public int generation;
+        // true if the page replaces all loaded records
+        public boolean refresh;
+        // loaded records, null if loading failed
+        public List<SmsMsg> records;
+        public int pageSize;
+
+        public RecordPageLoadEvent(int generation, boolean refresh, List<SmsMsg> records, int pageSize) {
+            this.generation = generation;
+            this.refresh = refresh;
+            this.records = records;
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * SMS records search event
+     */
+    public static class RecordSearchEvent {
+        // generation of the loading, results of outdated searching are dropped
+        public int generation;
+        // matched records, null if searching failed
+        public List<SmsSearchIndex.Match> matches;
+
+        public RecordSearchEvent(int generation, List<SmsSearchIndex.Match> matches) {
+            this.generation = generation;
+            this.matches = matches;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Telephony;
 import android.telephony.SmsMessage;
 
@@ -20,6 +21,7 @@ public class SmsReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        final long receiveTime = SystemClock.elapsedRealtimeNanos();
         XLog.d("SmsReceiver#onReceived() - {}", intent.getAction());
         if (SMS_RECEIVED.equals(intent.getAction())) {
             Bundle bundle = intent.getExtras();
@@ -43,9 +45,17 @@ public class SmsReceiver extends BroadcastReceiver {
                     smsMsg.setSender(sender);
                     smsMsg.setDate(date);
 
+                    // 服务运行中时直接交给它处理, 否则启动服务
+                    PendingResult pendingResult = goAsync();
+                    if (SmsCodeHandleService.handOff(smsMsg, receiveTime, pendingResult)) {
+                        return;
+                    }
                     Intent smsCodeHandleSvc = new Intent(context, SmsCodeHandleService.class);
                     smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_SMS_MESSAGE_DATA, smsMsg);
+                    smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_RECEIVE_TIME, receiveTime);
+                    smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_DISPATCH_TIME, SystemClock.elapsedRealtimeNanos());
                     ContextCompat.startForegroundService(context, smsCodeHandleSvc);
+                    pendingResult.finish();
                 }
             }
         }
@@ -0,0 +1,61 @@
+package com.github.tianma8023.smscode.service;
+
+/**
+ * Latency from SMS dispatch to the end of {@link SmsCodeHandleService} handling,
+ * separated by whether the service had to be created (cold) or was kept warm.
+ */
+public class HandleLatencyMetric {
+
+    private static final Stats sCold = new Stats();
+    private static final Stats sWarm = new Stats();
+
+    private HandleLatencyMetric() {
+    }
+
+    static void record(boolean warm, long latencyNanos) {
+        (warm ? sWarm : sCold).record(latencyNanos);
+    }
+
+    public static Stats getCold() {
+        return sCold;
+    }
+
+    public static Stats getWarm() {
+        return sWarm;
+    }
+
+    public static void reset() {
+        sCold.reset();
+        sWarm.reset();
+    }
+
+    public static class Stats {
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        synchronized void record(long latencyNanos) {
+            mCount++;
+            mTotalNanos += latencyNanos;
+            if (latencyNanos > mMaxNanos) {
+                mMaxNanos = latencyNanos;
+            }
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getAvgNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        public synchronized long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        synchronized void reset() {
+            mCount = mTotalNanos = mMaxNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.tianma8023.smscode.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.github.tianma8023.smscode.constant.PrefConst;
+import com.github.tianma8023.smscode.utils.PreferenceUtils;
+import com.github.tianma8023.smscode.utils.SPUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the preferences used by {@link SmsCodeHandleService}.
+ * <p>
+ * The snapshot is built once and swapped when related preference changes,
+ * so handling a message doesn't read SharedPreferences at all.
+ */
+public final class HandlerConfig {
+
+    // 会影响验证码处理流程的偏好设置
+    private static final Set<String> KEYS = new HashSet<>(Arrays.asList(
+            PrefConst.ENABLE,
+            PrefConst.ENABLE_AUTO_INPUT_CODE,
+            PrefConst.AUTO_INPUT_MODE,
+            PrefConst.FOCUS_MODE,
+            PrefConst.COPY_TO_CLIPBOARD,
+            PrefConst.CLEAR_CLIPBOARD,
+            PrefConst.SHOW_TOAST,
+            PrefConst.SHOW_CODE_NOTIFICATION,
+            PrefConst.AUTO_CANCEL_CODE_NOTIFICATION,
+            PrefConst.NOTIFICATION_RETENTION_TIME,
+            PrefConst.ENABLE_CODE_RECORDS,
+            PrefConst.RECORDS_MAX_COUNT,
+            PrefConst.RECORDS_MAX_AGE,
+            PrefConst.DELETE_SMS,
+            PrefConst.MARK_AS_READ,
+            PrefConst.BLOCK_NOTIFICATION,
+            PrefConst.WARM_IDLE_TIME
+    ));
+
+    private static volatile HandlerConfig sConfig;
+
+    // SharedPreferences 仅持有 listener 的弱引用
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    public final boolean enabled;
+
+    public final boolean autoInputEnabled;
+    public final String autoInputMode;
+    public final String focusMode;
+
+    public final boolean copyToClipboard;
+    public final boolean clearClipboard;
+    public final boolean showToast;
+
+    public final boolean showCodeNotification;
+    public final boolean autoCancelCodeNotification;
+    // seconds
+    public final int notificationRetentionTime;
+
+    public final boolean recordSmsCode;
+    public final int recordsMaxCount;
+    // days, 0 if unlimited
+    public final int recordsMaxAge;
+    public final boolean deleteSms;
+    public final boolean markAsRead;
+    public final boolean blockNotification;
+
+    // seconds to keep the handler service alive after handling, 0 if disabled
+    public final int warmIdleTime;
+
+    private HandlerConfig(Context context) {
+        enabled = SPUtils.isEnable(context);
+        autoInputEnabled = SPUtils.autoInputCodeEnabled(context);
+        autoInputMode = SPUtils.getAutoInputMode(context);
+        focusMode = SPUtils.getFocusMode(context);
+        copyToClipboard = SPUtils.copyToClipboardEnabled(context);
+        clearClipboard = SPUtils.shouldClearClipboard(context);
+        showToast = SPUtils.showToast(context);
+        showCodeNotification = SPUtils.showCodeNotification(context);
+        autoCancelCodeNotification = SPUtils.autoCancelCodeNotification(context);
+        notificationRetentionTime = SPUtils.getNotificationRetentionTime(context);
+        recordSmsCode = SPUtils.recordSmsCodeEnabled(context);
+        recordsMaxCount = SPUtils.getRecordsMaxCount(context);
+        recordsMaxAge = SPUtils.getRecordsMaxAge(context);
+        deleteSms = SPUtils.deleteSmsEnabled(context);
+        markAsRead = SPUtils.markAsReadEnabled(context);
+        blockNotification = SPUtils.blockNotificationEnabled(context);
+        warmIdleTime = SPUtils.getWarmIdleTime(context);
+    }
+
+    /**
+     * Get the current snapshot, build it at the first time.
+     */
+    public static HandlerConfig get(Context context) {
+        HandlerConfig config = sConfig;
+        if (config == null) {
+            synchronized (HandlerConfig.class) {
+                config = sConfig;
+                if (config == null) {
+                    final Context appContext = context.getApplicationContext();
+                    sListener = (sharedPreferences, key) -> {
+                        if (KEYS.contains(key)) {
+                            reload(appContext);
+                        }
+                    };
+                    PreferenceUtils.registerOnChangeListener(appContext, sListener);
+                    config = new HandlerConfig(appContext);
+                    sConfig = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    private static void reload(Context context) {
+        synchronized (HandlerConfig.class) {
+            sConfig = new HandlerConfig(context);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerConfig{" +
+                "enabled=" + enabled +
+                ", autoInputEnabled=" + autoInputEnabled +
+                ", autoInputMode='" + autoInputMode + '\'' +
+                ", focusMode='" + focusMode + '\'' +
+                ", copyToClipboard=" + copyToClipboard +
+                ", clearClipboard=" + clearClipboard +
+                ", showToast=" + showToast +
+                ", showCodeNotification=" + showCodeNotification +
+                ", autoCancelCodeNotification=" + autoCancelCodeNotification +
+                ", notificationRetentionTime=" + notificationRetentionTime +
+                ", recordSmsCode=" + recordSmsCode +
+                ", recordsMaxCount=" + recordsMaxCount +
+                ", recordsMaxAge=" + recordsMaxAge +
+                ", deleteSms=" + deleteSms +
+                ", markAsRead=" + markAsRead +
+                ", blockNotification=" + blockNotification +
+                ", warmIdleTime=" + warmIdleTime +
+                '}';
+    }
+}
@@ -1,93 +1,99 @@
 package com.github.tianma8023.smscode.service;
 
-import android.Manifest;
 import android.app.Notification;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.pm.PackageManager;
-import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
-import android.provider.Telephony;
+import android.os.Process;
 import android.text.TextUtils;
-import android.widget.Toast;
 
 import com.github.tianma8023.smscode.BuildConfig;
 import com.github.tianma8023.smscode.R;
 import com.github.tianma8023.smscode.constant.NotificationConst;
-import com.github.tianma8023.smscode.constant.PrefConst;
 import com.github.tianma8023.smscode.db.DBManager;
 import com.github.tianma8023.smscode.entity.SmsMsg;
-import com.github.tianma8023.smscode.service.accessibility.SmsCodeAutoInputService;
-import com.github.tianma8023.smscode.utils.AccessibilityUtils;
-import com.github.tianma8023.smscode.utils.ClipboardUtils;
-import com.github.tianma8023.smscode.utils.SPUtils;
-import com.github.tianma8023.smscode.utils.ShellUtils;
+import com.github.tianma8023.smscode.parser.ParseResult;
+import com.github.tianma8023.smscode.service.action.ActionHost;
+import com.github.tianma8023.smscode.service.action.CodeAction;
+import com.github.tianma8023.smscode.service.action.CodeActionRegistry;
+import com.github.tianma8023.smscode.service.action.CodeBatch;
+import com.github.tianma8023.smscode.service.action.CodeJob;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
 import com.github.tianma8023.smscode.utils.SmsCodeUtils;
 import com.github.tianma8023.smscode.utils.StringUtils;
 import com.github.tianma8023.smscode.utils.XLog;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import androidx.annotation.IntDef;
 import androidx.core.app.NotificationCompat;
-import androidx.core.content.ContextCompat;
 
 
 /**
  * 处理验证码的Service
  */
-public class SmsCodeHandleService extends Service {
+public class SmsCodeHandleService extends Service implements ActionHost {
 
     private static final String SERVICE_NAME = "SmsCodeHandleService";
 
     public static final String EXTRA_KEY_SMS_MESSAGE_DATA = "key_sms_message_data";
+    // SystemClock.elapsedRealtimeNanos() when the SMS is received
+    public static final String EXTRA_KEY_RECEIVE_TIME = "key_receive_time";
+    // SystemClock.elapsedRealtimeNanos() when the SMS is dispatched to this service
+    public static final String EXTRA_KEY_DISPATCH_TIME = "key_dispatch_time";
 
     public static final String ACTION_STOP_HANDLE_SERVICE = BuildConfig.APPLICATION_ID + "action.STOP_HANDLE_SERVICE";
 
-    private static final int MSG_COPY_TO_CLIPBOARD = 0;
-    private static final int MSG_SHOW_TOAST = 1;
-    private static final int MSG_DELETE_SMS = 2;
-    private static final int MSG_MARK_AS_READ = 3;
-    private static final int MSG_RECORD_SMS_MSG = 4;
-    private static final int MSG_AUTO_INPUT_CODE = 5;
-    private static final int MSG_CLEAR_CLIPBOARD = 6;
-    private static final int MSG_SHOW_CODE_NOTIFICATION = 7;
-    private static final int MSG_CANCEL_NOTIFICATION = 8;
-    private static final int MSG_QUIT_QUEUE = 9;
-    private static final int MSG_WAIT_FOR_QUIT = 10;
-    private static final int MSG_ENABLE_ACCESSIBILITY_SERVICE = 11;
+    private static final int MSG_RUN_ACTION = 0;
+    private static final int MSG_RUN_TASK = 1;
+    private static final int MSG_QUIT_QUEUE = 2;
+    private static final int MSG_WAIT_FOR_QUIT = 3;
+    private static final int MSG_FLUSH_BATCH = 4;
+    private static final int MSG_HAND_OFF = 5;
+
+    // 该时间窗口内到达的短信合并为一批，由批量操作一次处理
+    private static final long BURST_WINDOW_MILLIS = 500;
+
+    // 服务结束时等待数据库写入提交的最长时间
+    private static final long DB_FLUSH_TIMEOUT_MILLIS = 1000;
 
     private AtomicInteger mPreQuitQueueCount;
     private static final int DEFAULT_QUIT_COUNT = 0;
 
-    private String mFocusMode;
-    private String mAutoInputMode;
+    private volatile Handler uiHandler;
+    // 用户可见操作的工作线程
+    private volatile Handler workerHandler;
+    // 低优先级线程, 处理记录、删除、标记已读等不影响用户获取验证码的操作
+    private volatile Handler bookkeepingHandler;
 
-    private static final int OP_DELETE = 0;
-    private static final int OP_MARK_AS_READ = 1;
+    // 保温模式下跨短信复用的资源
+    private Bitmap mLargeIcon;
+    // 是否已处理过短信，即服务是否为热启动，只在工作线程访问
+    private boolean mWarm;
+    private volatile int mLastStartId;
 
-    @IntDef({OP_DELETE, OP_MARK_AS_READ})
-    @interface SmsOp {
-    }
+    // 运行中的实例，同进程的 SmsReceiver 可直接将短信交给它处理
+    private static SmsCodeHandleService sRunningInstance;
+    private static final Object sHandOffLock = new Object();
 
-    private volatile Handler uiHandler;
-    private volatile Handler workerHandler;
+    // 最新的验证码短信, 用户可见的操作只处理最新的验证码
+    private volatile CodeJob mNewestJob;
+    // 批量操作待处理的短信
+    private final Map<CodeAction, List<CodeJob>> mPendingBatches = new HashMap<>();
 
     public SmsCodeHandleService() {
     }
@@ -102,13 +108,22 @@ public class SmsCodeHandleService extends Service {
         uiHandler = new WorkerHandler(Looper.getMainLooper());
         workerHandler = new WorkerHandler(workerThread.getLooper());
 
+        HandlerThread bookkeepingThread = new HandlerThread(SERVICE_NAME + "-bookkeeping",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        bookkeepingThread.start();
+        bookkeepingHandler = new WorkerHandler(bookkeepingThread.getLooper());
+
         mPreQuitQueueCount = new AtomicInteger(DEFAULT_QUIT_COUNT);
 
+        synchronized (sHandOffLock) {
+            sRunningInstance = this;
+        }
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             // Show a notification for the foreground service.
             Notification notification = new NotificationCompat.Builder(this, NotificationConst.CHANNEL_ID_FOREGROUND_SERVICE)
                     .setSmallIcon(R.drawable.ic_app_icon)
-                    .setLargeIcon(BitmapFactory.decodeResource(getResources(), R.drawable.ic_app_icon))
+                    .setLargeIcon(getLargeIcon())
                     .setWhen(System.currentTimeMillis())
                     .setContentText(getString(R.string.foreground_notification_title))
                     .setAutoCancel(true)
@@ -118,6 +133,16 @@ public class SmsCodeHandleService extends Service {
         }
     }
 
+    @Override
+    public void onDestroy() {
+        synchronized (sHandOffLock) {
+            if (sRunningInstance == this) {
+                sRunningInstance = null;
+            }
+        }
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -125,21 +150,105 @@ public class SmsCodeHandleService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        boolean success = false;
+        mLastStartId = startId;
+        // 保温期间有新短信到达，取消待执行的退出
+        workerHandler.removeMessages(MSG_QUIT_QUEUE);
+
         if (intent != null && intent.hasExtra(EXTRA_KEY_SMS_MESSAGE_DATA)) {
+            long dispatchTime = intent.getLongExtra(EXTRA_KEY_DISPATCH_TIME, PipelineTracer.now());
+            long receiveTime = intent.getLongExtra(EXTRA_KEY_RECEIVE_TIME, dispatchTime);
             SmsMsg smsMsg = intent.getParcelableExtra(EXTRA_KEY_SMS_MESSAGE_DATA);
-            success = doWork(smsMsg);
-        }
-        if (success) {
-            waitForQuit(200);
+            // 与直接交接的短信一样在工作线程处理，保证短信按顺序串行处理
+            mPreQuitQueueCount.getAndIncrement();
+            HandOff handOff = new HandOff(smsMsg, receiveTime, dispatchTime, null);
+            workerHandler.sendMessage(workerHandler.obtainMessage(MSG_HAND_OFF, handOff));
         } else {
             waitForQuit(0);
         }
         return START_NOT_STICKY;
     }
 
-    private boolean doWork(SmsMsg smsMsg) {
-        if (!SPUtils.isEnable(this)) {
+    /**
+     * Hand the SMS to the running service directly, without parceling it and starting the
+     * service again. Only works in the same process.
+     *
+     * @param pendingResult result of the receiver, finished after the SMS is handled
+     * @return false if the service isn't running, the caller should start the service instead
+     */
+    public static boolean handOff(SmsMsg smsMsg, long receiveTime,
+                                  BroadcastReceiver.PendingResult pendingResult) {
+        synchronized (sHandOffLock) {
+            SmsCodeHandleService service = sRunningInstance;
+            if (service == null) {
+                return false;
+            }
+            // 取消待执行的退出，直到该短信处理完成
+            service.workerHandler.removeMessages(MSG_QUIT_QUEUE);
+            service.mPreQuitQueueCount.getAndIncrement();
+            HandOff handOff = new HandOff(smsMsg, receiveTime, PipelineTracer.now(), pendingResult);
+            // 按到达顺序排队，不能插到队首
+            boolean sent = service.workerHandler.sendMessage(
+                    service.workerHandler.obtainMessage(MSG_HAND_OFF, handOff));
+            if (!sent) {
+                // worker thread has quit
+                service.mPreQuitQueueCount.decrementAndGet();
+            }
+            return sent;
+        }
+    }
+
+    private static class HandOff {
+        final SmsMsg smsMsg;
+        final long receiveTime;
+        final long dispatchTime;
+        // null if the SMS is delivered by starting the service
+        final BroadcastReceiver.PendingResult pendingResult;
+
+        HandOff(SmsMsg smsMsg, long receiveTime, long dispatchTime,
+                BroadcastReceiver.PendingResult pendingResult) {
+            this.smsMsg = smsMsg;
+            this.receiveTime = receiveTime;
+            this.dispatchTime = dispatchTime;
+            this.pendingResult = pendingResult;
+        }
+    }
+
+    private void handleHandOff(HandOff handOff) {
+        try {
+            boolean success = handleSms(handOff.smsMsg, handOff.receiveTime,
+                    handOff.dispatchTime, PipelineTracer.now());
+            waitForQuit(success ? 200 : 0);
+        } finally {
+            if (handOff.pendingResult != null) {
+                handOff.pendingResult.finish();
+            }
+            handlePreQuitQueue();
+        }
+    }
+
+    /**
+     * Run on worker thread only.
+     *
+     * @return true if the SMS contains SMS code
+     */
+    private boolean handleSms(SmsMsg smsMsg, long receiveTime, long dispatchTime, long startTime) {
+        PipelineTracer.record(PipelineTracer.STAGE_RECEIVE, receiveTime, receiveTime, dispatchTime);
+        PipelineTracer.record(PipelineTracer.STAGE_START_SERVICE, receiveTime, dispatchTime, startTime);
+        boolean warm = mWarm;
+        mWarm = true;
+
+        boolean success = doWork(new CodeJob(smsMsg, HandlerConfig.get(this), receiveTime));
+        PipelineTracer.end(PipelineTracer.STAGE_DO_WORK, receiveTime, startTime);
+
+        long endTime = PipelineTracer.now();
+        HandleLatencyMetric.record(warm, endTime - dispatchTime);
+        return success;
+    }
+
+    private boolean doWork(CodeJob job) {
+        final SmsMsg smsMsg = job.smsMsg;
+        final HandlerConfig config = job.config;
+        if (!config.enabled) {
             XLog.i("SmsCode disabled, exiting");
             return false;
         }
@@ -148,14 +257,7 @@ public class SmsCodeHandleService extends Service {
         String msgBody = smsMsg.getBody();
         long date = smsMsg.getDate();
 
-        String lastSender = SPUtils.getLastSmsSender(this);
-        long lastDate = SPUtils.getLastSmsDate(this);
-
-        // save last sender & date
-        SPUtils.setLastSmsDate(this, date);
-        SPUtils.setLastSmsSender(this, sender);
-
-        if (Math.abs(date - lastDate) <= 5000 && lastSender.equals(sender)) {
+        if (SmsDedupCache.get(this).checkAndRecord(sender, msgBody, date)) {
             // duplicate SMS message
             XLog.d("Duplicate SMS, exiting");
             return false;
@@ -172,88 +274,145 @@ public class SmsCodeHandleService extends Service {
         if (TextUtils.isEmpty(msgBody)) {
             return false;
         }
-        String smsCode = SmsCodeUtils.parseSmsCodeIfExists(this, msgBody);
+        long parseStart = PipelineTracer.now();
+        ParseResult parseResult = SmsCodeUtils.parseSmsCode(this, msgBody);
+        PipelineTracer.end(PipelineTracer.STAGE_PARSE, job.originNanos, parseStart);
+        XLog.d("Parse result: {}", parseResult);
 
-        if (TextUtils.isEmpty(smsCode)) { // Not SMS code msg.
+        if (!parseResult.found()) { // Not SMS code msg.
+            XLog.i("No sms code, parsed in {} us", TimeUnit.NANOSECONDS.toMicros(parseResult.getTotalNanos()));
             return false;
         }
 
-        XLog.i("Sms code: {}", smsCode);
+        String smsCode = parseResult.getCode();
+        XLog.i("Sms code: {}, rule id: {}, keyword: {}, level: {}, parsed in {} us",
+                smsCode, parseResult.getRuleId(), parseResult.getKeyword(),
+                parseResult.getMatchLevel(), TimeUnit.NANOSECONDS.toMicros(parseResult.getTotalNanos()));
         smsMsg.setSmsCode(smsCode);
+        smsMsg.setRuleId(parseResult.getRuleId());
+        smsMsg.setCodeKeyword(parseResult.getKeyword());
+        smsMsg.setMatchLevel(parseResult.getMatchLevel());
+        smsMsg.setParseNanos(parseResult.getTotalNanos());
         smsMsg.setCompany(SmsCodeUtils.parseCompany(msgBody));
 
-        // 是否需要启动 AccessibilityService
-        boolean autoInputEnabled = SPUtils.autoInputCodeEnabled(this);
-        if (autoInputEnabled) {
-            mFocusMode = SPUtils.getFocusMode(this);
-            mAutoInputMode = SPUtils.getAutoInputMode(this);
+        // 短信只在工作线程处理，检查与赋值之间不会有其他短信插入
+        CodeJob newestJob = mNewestJob;
+        if (newestJob == null || smsMsg.getDate() >= newestJob.smsMsg.getDate()) {
+            mNewestJob = job;
+        }
+        dispatchActions(job);
+        return true;
+    }
 
-            if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(mAutoInputMode)
-                    && PrefConst.FOCUS_MODE_AUTO.equals(mFocusMode)) {
-                // Root mode + Auto Focus Mode
-                workerHandler.sendEmptyMessage(MSG_ENABLE_ACCESSIBILITY_SERVICE);
+    /**
+     * Dispatch enabled actions to the threads they prefer. Actions of different threads run
+     * concurrently, actions of the same thread run by priority ahead of earlier queued work.
+     * Batched actions are deferred to collect SMS arriving in a burst.
+     */
+    private void dispatchActions(CodeJob job) {
+        List<CodeAction> actions = CodeActionRegistry.getActions();
+        // 按优先级从低到高插入队首，执行时即为从高到低
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            CodeAction action = actions.get(i);
+            if (!action.isEnabled(job.config)) {
+                continue;
+            }
+            if (action.isBatched()) {
+                addToBatch(action, job);
+                continue;
+            }
+            Handler handler = getHandler(action.getThreadAffinity());
+            Message msg = handler.obtainMessage(MSG_RUN_ACTION, new ActionTask(action, new CodeBatch(job)));
+            mPreQuitQueueCount.getAndIncrement();
+            long delay = action.getDelayMillis();
+            if (delay > 0) {
+                handler.sendMessageDelayed(msg, delay);
+            } else {
+                handler.sendMessageAtFrontOfQueue(msg);
             }
         }
+    }
 
-        // 是否需要复制到剪切板
-        if (SPUtils.copyToClipboardEnabled(this)) {
-            Message copyMsg = uiHandler.obtainMessage(MSG_COPY_TO_CLIPBOARD, smsCode);
-            uiHandler.sendMessage(copyMsg);
+    private void addToBatch(CodeAction action, CodeJob job) {
+        synchronized (mPendingBatches) {
+            List<CodeJob> jobs = mPendingBatches.get(action);
+            if (jobs == null) {
+                // 本批次的第一条短信，窗口结束后执行
+                jobs = new ArrayList<>();
+                mPendingBatches.put(action, jobs);
+                Handler handler = getHandler(action.getThreadAffinity());
+                long delay = Math.max(BURST_WINDOW_MILLIS, action.getDelayMillis());
+                mPreQuitQueueCount.getAndIncrement();
+                handler.sendMessageDelayed(handler.obtainMessage(MSG_FLUSH_BATCH, action), delay);
+            }
+            jobs.add(job);
         }
+    }
 
-        // 是否显示Toast
-        if (SPUtils.showToast(this)) {
-            Message toastMsg = uiHandler.obtainMessage(MSG_SHOW_TOAST, smsCode);
-            uiHandler.sendMessage(toastMsg);
+    private void flushBatch(CodeAction action) {
+        List<CodeJob> jobs;
+        synchronized (mPendingBatches) {
+            jobs = mPendingBatches.remove(action);
         }
-
-        // 是否自动输入
-        if (autoInputEnabled) {
-            Message autoInputMsg = workerHandler.obtainMessage(MSG_AUTO_INPUT_CODE, smsMsg);
-            workerHandler.sendMessage(autoInputMsg);
+        if (jobs != null && !jobs.isEmpty()) {
+            XLog.d("Run {} for {} SMS", action.getName(), jobs.size());
+            CodeActionRegistry.run(action, this, new CodeBatch(jobs));
         }
+    }
 
-        // 是否显示通知
-        if (SPUtils.showCodeNotification(this)) {
-            Message notificationMsg = workerHandler.obtainMessage(MSG_SHOW_CODE_NOTIFICATION, smsMsg);
-            workerHandler.sendMessage(notificationMsg);
+    private Handler getHandler(@CodeAction.ThreadAffinity int affinity) {
+        switch (affinity) {
+            case CodeAction.THREAD_MAIN:
+                return uiHandler;
+            case CodeAction.THREAD_BACKGROUND:
+                return bookkeepingHandler;
+            case CodeAction.THREAD_WORKER:
+            default:
+                return workerHandler;
         }
+    }
 
-        // 是否记录验证码短信
-        if (SPUtils.recordSmsCodeEnabled(this)) {
-            Message recordMsg = workerHandler.obtainMessage(MSG_RECORD_SMS_MSG, smsMsg);
-            workerHandler.sendMessage(recordMsg);
-        }
+    private static class ActionTask {
+        final CodeAction action;
+        final CodeBatch batch;
 
-        // 是否删除验证码短信NotificationController
-        if (SPUtils.deleteSmsEnabled(this)) {
-            Message deleteMsg = workerHandler.obtainMessage(MSG_DELETE_SMS, smsMsg);
-            mPreQuitQueueCount.getAndIncrement();
-            workerHandler.sendMessageDelayed(deleteMsg, 100);
-        } else {
-            // 是否标记验证码短信为已读
-            if (SPUtils.markAsReadEnabled(this)) {
-                // mark sms as read
-                Message markMsg = workerHandler.obtainMessage(MSG_MARK_AS_READ, smsMsg);
-                mPreQuitQueueCount.getAndIncrement();
-                workerHandler.sendMessageDelayed(markMsg, 100);
-            }
+        ActionTask(CodeAction action, CodeBatch batch) {
+            this.action = action;
+            this.batch = batch;
         }
+    }
+
+    @Override
+    public Context getContext() {
+        return this;
+    }
 
-        // 是否拦截验证码短信通知
-        if (SPUtils.blockNotificationEnabled(this)) {
-            // block sms notification
-            uiHandler.postDelayed(() -> {
-                Intent intent = new Intent(NotificationMonitorService.ACTION_BLOCK_SMS_NOTIFICATION);
-                intent.putExtra(NotificationMonitorService.EXTRA_KEY_SMS_MSG, smsMsg);
-                sendBroadcast(intent);
-            }, 500);
-            Intent intent = new Intent(NotificationMonitorService.ACTION_BLOCK_SMS_NOTIFICATION);
-            intent.putExtra(NotificationMonitorService.EXTRA_KEY_SMS_MSG, smsMsg);
-            sendBroadcast(intent);
+    @Override
+    public Bitmap getLargeIcon() {
+        if (mLargeIcon == null) {
+            mLargeIcon = BitmapFactory.decodeResource(getResources(), R.drawable.ic_app_icon);
         }
+        return mLargeIcon;
+    }
 
-        return true;
+    @Override
+    public boolean isSuperseded(CodeJob job) {
+        return mNewestJob != job;
+    }
+
+    @Override
+    public void post(@CodeAction.ThreadAffinity int affinity, Runnable task, long delayMillis) {
+        Handler handler = getHandler(affinity);
+        mPreQuitQueueCount.getAndIncrement();
+        handler.sendMessageDelayed(handler.obtainMessage(MSG_RUN_TASK, task), delayMillis);
+    }
+
+    @Override
+    public void listenStopCommand() {
+        if (mCommandReceiver == null) {
+            mCommandReceiver = new CommandReceiver();
+            mCommandReceiver.register(this);
+        }
     }
 
     private void waitForQuit(long delay) {
@@ -269,49 +428,27 @@ public class SmsCodeHandleService extends Service {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
-                case MSG_ENABLE_ACCESSIBILITY_SERVICE: {
-                    enableAccessibilityService();
-                    break;
-                }
-                case MSG_COPY_TO_CLIPBOARD: {
-                    copyToClipboard((String) msg.obj);
-                    break;
-                }
-                case MSG_SHOW_TOAST: {
-                    showToast((String) msg.obj);
-                    break;
-                }
-                case MSG_DELETE_SMS: {
-                    SmsMsg smsMsg = (SmsMsg) msg.obj;
-                    deleteSms(smsMsg.getSender(), smsMsg.getBody());
+                case MSG_RUN_ACTION: {
+                    ActionTask task = (ActionTask) msg.obj;
+                    CodeActionRegistry.run(task.action, SmsCodeHandleService.this, task.batch);
                     handlePreQuitQueue();
                     break;
                 }
-                case MSG_MARK_AS_READ: {
-                    SmsMsg smsMsg = (SmsMsg) msg.obj;
-                    markSmsAsRead(smsMsg.getSender(), smsMsg.getBody());
-                    handlePreQuitQueue();
+                case MSG_HAND_OFF: {
+                    handleHandOff((HandOff) msg.obj);
                     break;
                 }
-                case MSG_RECORD_SMS_MSG: {
-                    recordSmsMsg((SmsMsg) msg.obj);
-                    break;
-                }
-                case MSG_AUTO_INPUT_CODE: {
-                    SmsMsg smsMsg = (SmsMsg) msg.obj;
-                    handleAutoInputCode(smsMsg.getSmsCode());
-                    break;
-                }
-                case MSG_CLEAR_CLIPBOARD: {
-                    clearClipboard();
-                    break;
-                }
-                case MSG_SHOW_CODE_NOTIFICATION: {
-                    showCodeNotification((SmsMsg) msg.obj);
+                case MSG_FLUSH_BATCH: {
+                    flushBatch((CodeAction) msg.obj);
+                    handlePreQuitQueue();
                     break;
                 }
-                case MSG_CANCEL_NOTIFICATION: {
-                    cancelNotification((Integer) msg.obj);
+                case MSG_RUN_TASK: {
+                    try {
+                        ((Runnable) msg.obj).run();
+                    } catch (Exception e) {
+                        XLog.e("Run task failed", e);
+                    }
                     handlePreQuitQueue();
                     break;
                 }
@@ -329,213 +466,29 @@ public class SmsCodeHandleService extends Service {
         }
     }
 
-    private void enableAccessibilityService() {
-        String accessSvcName = AccessibilityUtils.getServiceName(SmsCodeAutoInputService.class);
-        // 用root的方式启动
-        boolean enabled = ShellUtils.enableAccessibilityService(accessSvcName);
-        XLog.d("Accessibility enabled by Root: {}", enabled);
-        if (enabled) { // waiting for AutoInputService working on.
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private void copyToClipboard(String smsCode) {
-        ClipboardUtils.copyToClipboard(this, smsCode);
-    }
-
-    private void handleAutoInputCode(String smsCode) {
-        if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(mAutoInputMode)
-                && PrefConst.FOCUS_MODE_MANUAL.equals(mFocusMode)) {
-            // focus mode: manual focus
-            // input mode: root mode
-            boolean success = ShellUtils.inputText(smsCode);
-            if (success) {
-                XLog.i("Auto input succeed");
-                if (SPUtils.copyToClipboardEnabled(this) &&
-                        SPUtils.shouldClearClipboard(this)) {
-                    uiHandler.sendEmptyMessage(MSG_CLEAR_CLIPBOARD);
-                }
-            }
-        } else {
-            // start auto input
-            Intent intent = new Intent(SmsCodeAutoInputService.ACTION_START_AUTO_INPUT);
-            intent.putExtra(SmsCodeAutoInputService.EXTRA_KEY_SMS_CODE, smsCode);
-            sendBroadcast(intent);
-        }
-    }
-
-    private void clearClipboard() {
-        ClipboardUtils.clearClipboard(this);
-    }
-
-    private void showToast(String smsCode) {
-        String text = this.getString(R.string.cur_verification_code, smsCode);
-        Toast.makeText(this, text, Toast.LENGTH_LONG).show();
-    }
-
-    private void markSmsAsRead(String sender, String body) {
-        operateSms(sender, body, OP_MARK_AS_READ);
-    }
-
-    private void deleteSms(String sender, String body) {
-        operateSms(sender, body, OP_DELETE);
-    }
-
-    /**
-     * Handle sms according to its operation
-     */
-    private void operateSms(String sender, String body, @SmsOp int smsOp) {
-        Cursor cursor = null;
-        try {
-            if (ContextCompat.checkSelfPermission(this, Manifest.permission.READ_SMS)
-                    != PackageManager.PERMISSION_GRANTED) {
-                XLog.e("Don't have permission to read/write sms");
-                return;
-            }
-            String[] projection = new String[]{
-                    Telephony.Sms._ID,
-                    Telephony.Sms.ADDRESS,
-                    Telephony.Sms.BODY,
-                    Telephony.Sms.READ,
-                    Telephony.Sms.DATE
-            };
-            // 查看最近5条短信
-            String sortOrder = Telephony.Sms.DATE + " desc limit 5";
-            Uri uri = Telephony.Sms.CONTENT_URI;
-            cursor = this.getContentResolver().query(uri, projection, null, null, sortOrder);
-            if (cursor == null)
-                return;
-            while (cursor.moveToNext()) {
-                String curAddress = cursor.getString(cursor.getColumnIndex(Telephony.Sms.ADDRESS));
-                int curRead = cursor.getInt(cursor.getColumnIndex(Telephony.Sms.READ));
-                String curBody = cursor.getString(cursor.getColumnIndex(Telephony.Sms.BODY));
-                if (curAddress.equals(sender) && curRead == 0 && curBody.startsWith(body)) {
-                    String smsMessageId = cursor.getString(cursor.getColumnIndex(Telephony.Sms._ID));
-                    String where = Telephony.Sms._ID + " = ?";
-                    String[] selectionArgs = new String[]{smsMessageId};
-                    if (smsOp == OP_DELETE) {
-                        int rows = getContentResolver().delete(uri, where, selectionArgs);
-                        if (rows > 0) {
-                            XLog.i("Delete sms succeed");
-                            break;
-                        }
-                    } else if (smsOp == OP_MARK_AS_READ) {
-                        ContentValues values = new ContentValues();
-                        values.put(Telephony.Sms.READ, true);
-                        int rows = this.getContentResolver().update(uri, values, where, selectionArgs);
-                        if (rows > 0) {
-                            XLog.i("Mark as read succeed");
-                            break;
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            if (smsOp == OP_MARK_AS_READ) {
-                XLog.e("Mark as read failed: ", e);
-            } else if (smsOp == OP_DELETE) {
-                XLog.e("Delete sms failed: ", e);
-            }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-    }
-
-    private void recordSmsMsg(SmsMsg smsMsg) {
-        try {
-            DBManager dm = DBManager.get(this);
-            dm.addSmsMsg(smsMsg);
-            XLog.d("Add SMS message record succeed");
-
-            List<SmsMsg> smsMsgList = dm.queryAllSmsMsg();
-            if (smsMsgList.size() > PrefConst.MAX_SMS_RECORDS_COUNT_DEFAULT) {
-                List<SmsMsg> outdatedMsgList = new ArrayList<>();
-                for (int i = PrefConst.MAX_SMS_RECORDS_COUNT_DEFAULT; i < smsMsgList.size(); i++) {
-                    outdatedMsgList.add(smsMsgList.get(i));
-                }
-                dm.removeSmsMsgList(outdatedMsgList);
-                XLog.d("Remove outdated SMS message records succeed");
-            }
-        } catch (Exception e) {
-            XLog.e("Add SMS message record failed", e);
-        }
-    }
-
-    private void showCodeNotification(SmsMsg smsMsg) {
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (manager == null)
-            return;
-
-        String company = smsMsg.getCompany();
-        String smsCode = smsMsg.getSmsCode();
-        String title = TextUtils.isEmpty(company) ? smsMsg.getSender() : company;
-        String content = getString(R.string.code_notification_content, smsCode);
-
-        int notificationId = smsMsg.hashCode();
-
-        Intent copyCodeIntent = CopyCodeService.createCopyCodeIntent(this, smsCode);
-        PendingIntent contentIntent = PendingIntent.getService(this,
-                0,
-                copyCodeIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT);
-
-        Intent stopServiceIntent = new Intent(ACTION_STOP_HANDLE_SERVICE);
-        PendingIntent deleteIntent = PendingIntent.getBroadcast(this,
-                0, stopServiceIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-        Notification notification = new NotificationCompat.Builder(this, NotificationConst.CHANNEL_ID_SMSCODE_NOTIFICATION)
-                .setSmallIcon(R.drawable.ic_app_icon)
-                .setLargeIcon(BitmapFactory.decodeResource(getResources(), R.drawable.ic_app_icon))
-                .setWhen(System.currentTimeMillis())
-                .setContentTitle(title)
-                .setContentText(content)
-                .setContentIntent(contentIntent)
-                .setDeleteIntent(deleteIntent)
-                .setAutoCancel(true)
-                .setColor(ContextCompat.getColor(this, R.color.ic_launcher_background))
-                .setGroup(NotificationConst.GROUP_KEY_SMSCODE_NOTIFICATION)
-                .build();
-
-        manager.notify(notificationId, notification);
-
-        // 是否自动清除验证码通知
-        if (SPUtils.autoCancelCodeNotification(this)) {
-            if (mCommandReceiver == null) {
-                mCommandReceiver = new CommandReceiver();
-                mCommandReceiver.register(this);
-            }
-
-            Message cancelNotifyMsg = workerHandler
-                    .obtainMessage(MSG_CANCEL_NOTIFICATION, notificationId);
-            int retentionTime = SPUtils.getNotificationRetentionTime(this) * 1000;
-            mPreQuitQueueCount.getAndIncrement();
-            workerHandler.sendMessageDelayed(cancelNotifyMsg, retentionTime);
-        }
-    }
-
-    private void cancelNotification(int notificationId) {
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (manager == null) {
-            return;
-        }
-        manager.cancel(notificationId);
-    }
-
     private void handlePreQuitQueue() {
         mPreQuitQueueCount.decrementAndGet();
         if (mPreQuitQueueCount.get() <= DEFAULT_QUIT_COUNT) {
-            // 结束Looper
-            workerHandler.sendEmptyMessage(MSG_QUIT_QUEUE);
+            // 结束Looper，保温模式下空闲一段时间后再结束
+            long idleTime = TimeUnit.SECONDS.toMillis(HandlerConfig.get(this).warmIdleTime);
+            workerHandler.sendEmptyMessageDelayed(MSG_QUIT_QUEUE, idleTime);
         }
     }
 
     private void quit() {
+        synchronized (sHandOffLock) {
+            // 退出前又收到了新的短信，继续保持运行
+            if (mPreQuitQueueCount.get() > DEFAULT_QUIT_COUNT || !stopSelfResult(mLastStartId)) {
+                XLog.d("New SMS arrived, keep worker thread alive");
+                return;
+            }
+            sRunningInstance = null;
+        }
+        // 服务结束时才将去重缓存写入磁盘
+        SmsDedupCache.get(this).persist(this);
+        if (bookkeepingHandler != null) {
+            bookkeepingHandler.getLooper().quitSafely();
+        }
         if (workerHandler != null) {
             workerHandler.getLooper().quitSafely();
             XLog.d("Worker thread quit");
@@ -543,7 +496,10 @@ public class SmsCodeHandleService extends Service {
         if (mCommandReceiver != null) {
             mCommandReceiver.unregister(this);
         }
-        stopSelf();
+        // 服务结束后进程可能被回收，提交待写入的数据
+        if (!DBManager.get(this).flush(DB_FLUSH_TIMEOUT_MILLIS)) {
+            XLog.w("Pending database writes are not committed in time");
+        }
     }
 
     private CommandReceiver mCommandReceiver = null;
@@ -0,0 +1,115 @@
+package com.github.tianma8023.smscode.service;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.github.tianma8023.smscode.utils.SPUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, time-windowed cache to drop SMS delivered more than once, e.g. by both
+ * {@code SmsReceiver} and {@code SmsObserveService}.
+ * <p>
+ * Messages are keyed by a hash of sender and body. The cache lives in memory,
+ * it's restored from preferences once and saved back only when the handler service stops.
+ */
+public class SmsDedupCache {
+
+    // 同一条短信在该时间窗口内重复到达视为重复
+    private static final long DEDUP_WINDOW = 5000;
+    private static final int MAX_ENTRIES = 64;
+
+    private static final char ENTRY_SEPARATOR = ',';
+    private static final char KEY_SEPARATOR = ':';
+
+    private static SmsDedupCache sInstance;
+
+    // message key -> date, in access order
+    private final LinkedHashMap<Long, Long> mEntries =
+            new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private boolean mDirty;
+
+    private SmsDedupCache(Context context) {
+        restore(SPUtils.getSmsDedupEntries(context));
+    }
+
+    public static synchronized SmsDedupCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SmsDedupCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Record the message and check whether it is a duplicate one.
+     *
+     * @return true if the same message has been seen within the window
+     */
+    public synchronized boolean checkAndRecord(String sender, String body, long date) {
+        long key = key(sender, body);
+        evictExpired(date);
+        Long lastDate = mEntries.put(key, date);
+        mDirty = true;
+        return lastDate != null && Math.abs(date - lastDate) <= DEDUP_WINDOW;
+    }
+
+    /**
+     * Save entries into preferences if changed.
+     */
+    public synchronized void persist(Context context) {
+        if (!mDirty) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Long, Long> entry : mEntries.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(ENTRY_SEPARATOR);
+            }
+            sb.append(entry.getKey()).append(KEY_SEPARATOR).append(entry.getValue());
+        }
+        SPUtils.setSmsDedupEntries(context, sb.toString());
+        mDirty = false;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<Long, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() > DEDUP_WINDOW) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void restore(String entries) {
+        if (TextUtils.isEmpty(entries)) {
+            return;
+        }
+        for (String entry : entries.split(String.valueOf(ENTRY_SEPARATOR))) {
+            int index = entry.indexOf(KEY_SEPARATOR);
+            if (index <= 0) {
+                continue;
+            }
+            try {
+                mEntries.put(Long.parseLong(entry.substring(0, index)),
+                        Long.parseLong(entry.substring(index + 1)));
+            } catch (NumberFormatException e) {
+                // ignore broken entry
+            }
+        }
+    }
+
+    private static long key(String sender, String body) {
+        int senderHash = sender == null ? 0 : sender.hashCode();
+        int bodyHash = body == null ? 0 : body.hashCode();
+        return ((long) senderHash << 32) | (bodyHash & 0xffffffffL);
+    }
+}
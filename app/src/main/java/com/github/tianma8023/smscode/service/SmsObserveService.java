@@ -7,15 +7,21 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.Telephony;
+import android.text.TextUtils;
 
 import com.github.tianma8023.smscode.entity.SmsMsg;
 import com.github.tianma8023.smscode.utils.SPUtils;
 import com.github.tianma8023.smscode.utils.XLog;
 
+import java.util.List;
+
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import ch.qos.logback.classic.Level;
@@ -25,9 +31,31 @@ import ch.qos.logback.classic.Level;
  */
 public class SmsObserveService extends Service {
 
+    // 短时间内多次 onChange() 只查询一次
+    private static final long DEBOUNCE_MILLIS = 50;
+    // 早于该时间的短信不再处理，例如服务未运行期间收到的短信
+    private static final long STALE_SMS_MILLIS = 60 * 1000;
+
+    private static final String[] PROJECTION = new String[]{
+            Telephony.Sms._ID,
+            Telephony.Sms.ADDRESS,
+            Telephony.Sms.BODY,
+            Telephony.Sms.DATE
+    };
+
     private SmsObserver mSmsObserver;
 
-    private int lastId = 0;
+    // 查询短信的后台线程，以下字段只在该线程中访问
+    private HandlerThread mObserverThread;
+    private Handler mObserverHandler;
+    // 已处理的最大短信 _ID
+    private long mLastId = -1;
+    private boolean mScanPending;
+    // 本次待执行查询的 _ID 上限, 变更的 URI 中没有 _ID 时不设上限
+    private long mPendingUpperId;
+    // 本次待执行查询的第一次 onChange() 时间
+    private long mPendingReceiveTime;
+    private final Runnable mScanRunnable = this::parseNewSms;
 
     private boolean mCurIsVerboseLog;
 
@@ -37,6 +65,11 @@ public class SmsObserveService extends Service {
     public void onCreate() {
         super.onCreate();
         mCurIsVerboseLog = SPUtils.isVerboseLogMode(this);
+
+        mObserverThread = new HandlerThread("SmsObserver", Process.THREAD_PRIORITY_FOREGROUND);
+        mObserverThread.start();
+        mObserverHandler = new Handler(mObserverThread.getLooper());
+        mObserverHandler.post(this::initLastId);
     }
 
     @Nullable
@@ -68,13 +101,14 @@ public class SmsObserveService extends Service {
     public void onDestroy() {
         super.onDestroy();
         unregisterObserver();
+        mObserverThread.quitSafely();
     }
 
     private void registerObserver() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS)
                 == PackageManager.PERMISSION_GRANTED) {
             if (mSmsObserver == null) {
-                mSmsObserver = new SmsObserver(new Handler(Looper.getMainLooper()));
+                mSmsObserver = new SmsObserver(mObserverHandler);
             }
             // register SMS content observer
             getContentResolver().registerContentObserver(Telephony.Sms.CONTENT_URI,
@@ -101,51 +135,149 @@ public class SmsObserveService extends Service {
 
         @Override
         public void onChange(boolean selfChange) {
-            XLog.d("SmsObserver#onChange()");
-            parseNewSms();
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            XLog.d("SmsObserver#onChange() - {}", uri);
+            long smsId = parseSmsId(uri);
+            if (smsId >= 0 && smsId <= mLastId) {
+                // 已处理过的短信被删除、标记已读等(包括本应用自己的操作)，不是新短信
+                return;
+            }
+            if (uri != null && isNonInboxUri(uri)) {
+                return;
+            }
+            long upperId = smsId >= 0 ? smsId : Long.MAX_VALUE;
+            if (!mScanPending) {
+                mScanPending = true;
+                mPendingUpperId = upperId;
+                mPendingReceiveTime = SystemClock.elapsedRealtimeNanos();
+                mObserverHandler.postDelayed(mScanRunnable, DEBOUNCE_MILLIS);
+            } else {
+                mPendingUpperId = Math.max(mPendingUpperId, upperId);
+            }
         }
     }
 
-    private void parseNewSms() {
-        final String[] projection = new String[]{
-                Telephony.Sms._ID,
-                Telephony.Sms.ADDRESS,
-                Telephony.Sms.BODY,
-                Telephony.Sms.DATE
-        };
-        // 考虑到不止新增短信能触发Sms ContentObserver的onChange()，比如删除短信也能触发
-        // 所以需要时间判断, 10s之内的是新短信
-        final String selection = Telephony.Sms.DATE + " > ?";
-        final String[] selectionArgs = new String[]{
-                "" + (System.currentTimeMillis() - 10000),
-        };
-        final String sortOrder = Telephony.Sms.DATE + " desc limit 1";
-        Cursor cursor = getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, projection,
-                selection, selectionArgs, sortOrder);
-        if (cursor == null) {
-            return;
+    /**
+     * _ID of the changed SMS, e.g. content://sms/123, -1 if the uri has no _ID
+     */
+    private static long parseSmsId(Uri uri) {
+        if (uri == null) {
+            return -1;
         }
-        if(cursor.moveToFirst()) {
-            int id = cursor.getInt(cursor.getColumnIndex(Telephony.Sms._ID));
-            if (id != lastId) { // same with the last id
-                lastId = id;
+        String lastSegment = uri.getLastPathSegment();
+        if (lastSegment == null || !TextUtils.isDigitsOnly(lastSegment)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastSegment);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-                String sender = cursor.getString(cursor.getColumnIndex(Telephony.Sms.ADDRESS));
-                String body = cursor.getString(cursor.getColumnIndex(Telephony.Sms.BODY));
-                long date = cursor.getLong(cursor.getColumnIndex(Telephony.Sms.DATE));
+    /**
+     * 草稿箱、发件箱等非收件箱的变更
+     */
+    private static boolean isNonInboxUri(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return false;
+        }
+        switch (segments.get(0)) {
+            case "draft":
+            case "outbox":
+            case "sent":
+            case "queued":
+            case "failed":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 初始化已处理的最大短信 _ID，首次运行时从当前最新的短信开始
+     */
+    private void initLastId() {
+        long lastId = SPUtils.getLastObservedSmsId(this);
+        long maxId = queryMaxSmsId();
+        if (lastId < 0 || lastId > maxId) {
+            // 首次运行，或短信数据库被清空过
+            lastId = maxId;
+            SPUtils.setLastObservedSmsId(this, lastId);
+        }
+        mLastId = lastId;
+    }
+
+    private long queryMaxSmsId() {
+        final String[] projection = new String[]{Telephony.Sms._ID};
+        final String sortOrder = Telephony.Sms._ID + " desc limit 1";
+        try (Cursor cursor = getContentResolver().query(Telephony.Sms.CONTENT_URI, projection,
+                null, null, sortOrder)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            XLog.e("Query max SMS id failed", e);
+        }
+        return 0;
+    }
+
+    /**
+     * 处理 _ID 大于已处理的最大 _ID 的收件箱短信，变更的 URI 中有 _ID 时只查询到该短信为止
+     */
+    private void parseNewSms() {
+        mScanPending = false;
+        final long receiveTime = mPendingReceiveTime;
+        final String selection;
+        final String[] selectionArgs;
+        if (mPendingUpperId == Long.MAX_VALUE) {
+            selection = Telephony.Sms._ID + " > ?";
+            selectionArgs = new String[]{String.valueOf(mLastId)};
+        } else {
+            selection = Telephony.Sms._ID + " > ? and " + Telephony.Sms._ID + " <= ?";
+            selectionArgs = new String[]{String.valueOf(mLastId), String.valueOf(mPendingUpperId)};
+        }
+        final String sortOrder = Telephony.Sms._ID + " asc";
+        final long staleDate = System.currentTimeMillis() - STALE_SMS_MILLIS;
+        long lastId = mLastId;
+        try (Cursor cursor = getContentResolver().query(Telephony.Sms.Inbox.CONTENT_URI, PROJECTION,
+                selection, selectionArgs, sortOrder)) {
+            if (cursor == null) {
+                return;
+            }
+            final int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            final int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            final int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            final int dateIndex = cursor.getColumnIndex(Telephony.Sms.DATE);
+            while (cursor.moveToNext()) {
+                lastId = cursor.getLong(idIndex);
+                long date = cursor.getLong(dateIndex);
+                if (date < staleDate) {
+                    continue;
+                }
 
                 SmsMsg smsMsg = new SmsMsg();
-                smsMsg.setSender(sender);
-                smsMsg.setBody(body);
+                smsMsg.setSender(cursor.getString(addressIndex));
+                smsMsg.setBody(cursor.getString(bodyIndex));
                 smsMsg.setDate(date);
 
                 Intent smsCodeHandleSvc = new Intent(this, SmsCodeHandleService.class);
                 smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_SMS_MESSAGE_DATA, smsMsg);
+                smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_RECEIVE_TIME, receiveTime);
+                smsCodeHandleSvc.putExtra(SmsCodeHandleService.EXTRA_KEY_DISPATCH_TIME, SystemClock.elapsedRealtimeNanos());
                 ContextCompat.startForegroundService(this, smsCodeHandleSvc);
             }
+        } catch (Exception e) {
+            XLog.e("Query new SMS failed", e);
         }
-        if (!cursor.isClosed()) {
-            cursor.close();
+        if (lastId != mLastId) {
+            mLastId = lastId;
+            SPUtils.setLastObservedSmsId(this, lastId);
         }
     }
 
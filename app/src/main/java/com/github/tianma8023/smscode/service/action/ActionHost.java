@@ -0,0 +1,29 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * The service which runs actions.
+ */
+public interface ActionHost {
+
+    Context getContext();
+
+    Bitmap getLargeIcon();
+
+    /**
+     * Whether a newer SMS code is being handled, the newest code wins for user-visible actions
+     */
+    boolean isSuperseded(CodeJob job);
+
+    /**
+     * Run a follow-up task, the host keeps running until the task is done.
+     */
+    void post(@CodeAction.ThreadAffinity int affinity, Runnable task, long delayMillis);
+
+    /**
+     * Stop waiting for pending follow-up tasks when the user dismisses the code notification
+     */
+    void listenStopCommand();
+}
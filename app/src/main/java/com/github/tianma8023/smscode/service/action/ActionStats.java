@@ -0,0 +1,60 @@
+package com.github.tianma8023.smscode.service.action;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution stats of one action.
+ */
+public class ActionStats {
+
+    private long mCount;
+    private long mFailures;
+    private long mTimeouts;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    synchronized void record(long nanos, boolean failed, boolean timeout) {
+        mCount++;
+        if (failed) {
+            mFailures++;
+        }
+        if (timeout) {
+            mTimeouts++;
+        }
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getFailures() {
+        return mFailures;
+    }
+
+    public synchronized long getTimeouts() {
+        return mTimeouts;
+    }
+
+    public synchronized long getAvgNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    public synchronized long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    synchronized void reset() {
+        mCount = mFailures = mTimeouts = mTotalNanos = mMaxNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mCount + ", failures=" + mFailures + ", timeouts=" + mTimeouts +
+                ", avg=" + TimeUnit.NANOSECONDS.toMicros(getAvgNanos()) + "us" +
+                ", max=" + TimeUnit.NANOSECONDS.toMicros(mMaxNanos) + "us";
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.github.tianma8023.smscode.constant.PrefConst;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+import com.github.tianma8023.smscode.service.accessibility.SmsCodeAutoInputService;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.AccessibilityUtils;
+import com.github.tianma8023.smscode.utils.ClipboardUtils;
+import com.github.tianma8023.smscode.utils.ShellUtils;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动输入验证码
+ */
+class AutoInputAction extends BaseCodeAction {
+
+    AutoInputAction() {
+        super("autoInput", THREAD_WORKER, PRIORITY_HIGH, PipelineTracer.STAGE_AUTO_INPUT);
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        // root 模式下启动 AccessibilityService 需等待 1s
+        return 3000;
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.autoInputEnabled;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        CodeJob job = batch.getLatest();
+        if (host.isSuperseded(job)) {
+            return;
+        }
+        HandlerConfig config = job.config;
+        String smsCode = job.smsMsg.getSmsCode();
+        if (PrefConst.AUTO_INPUT_MODE_ROOT.equals(config.autoInputMode)) {
+            if (PrefConst.FOCUS_MODE_AUTO.equals(config.focusMode)) {
+                // Root mode + Auto Focus Mode, 需要先启动 AccessibilityService
+                enableAccessibilityService();
+            } else {
+                // focus mode: manual focus
+                // input mode: root mode
+                boolean success = ShellUtils.inputText(smsCode);
+                if (success) {
+                    XLog.i("Auto input succeed");
+                    if (config.copyToClipboard && config.clearClipboard) {
+                        final Context context = host.getContext();
+                        host.post(THREAD_MAIN, () -> ClipboardUtils.clearClipboard(context), 0);
+                    }
+                }
+                return;
+            }
+        }
+        // start auto input
+        Intent intent = new Intent(SmsCodeAutoInputService.ACTION_START_AUTO_INPUT);
+        intent.putExtra(SmsCodeAutoInputService.EXTRA_KEY_SMS_CODE, smsCode);
+        host.getContext().sendBroadcast(intent);
+    }
+
+    private void enableAccessibilityService() {
+        String accessSvcName = AccessibilityUtils.getServiceName(SmsCodeAutoInputService.class);
+        // 用root的方式启动
+        boolean enabled = ShellUtils.enableAccessibilityService(accessSvcName);
+        XLog.d("Accessibility enabled by Root: {}", enabled);
+        if (enabled) { // waiting for AutoInputService working on.
+            try {
+                TimeUnit.SECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
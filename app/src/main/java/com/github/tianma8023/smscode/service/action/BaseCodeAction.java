@@ -0,0 +1,56 @@
+package com.github.tianma8023.smscode.service.action;
+
+/**
+ * Base action which holds the static attributes.
+ */
+public abstract class BaseCodeAction implements CodeAction {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
+    private final String mName;
+    private final int mThreadAffinity;
+    private final int mPriority;
+    private final int mTraceStage;
+
+    protected BaseCodeAction(String name, @ThreadAffinity int threadAffinity, int priority, int traceStage) {
+        mName = name;
+        mThreadAffinity = threadAffinity;
+        mPriority = priority;
+        mTraceStage = traceStage;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getThreadAffinity() {
+        return mThreadAffinity;
+    }
+
+    @Override
+    public int getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    @Override
+    public long getDelayMillis() {
+        return 0;
+    }
+
+    @Override
+    public boolean isBatched() {
+        return false;
+    }
+
+    @Override
+    public int getTraceStage() {
+        return mTraceStage;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+import com.github.tianma8023.smscode.service.NotificationMonitorService;
+
+/**
+ * 拦截验证码短信通知
+ */
+class BlockNotificationAction extends BaseCodeAction {
+
+    BlockNotificationAction() {
+        super("blockNotification", THREAD_BACKGROUND, PRIORITY_HIGH, -1);
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.blockNotification;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        final Context context = host.getContext();
+        for (CodeJob job : batch.getJobs()) {
+            final SmsMsg smsMsg = job.smsMsg;
+            sendBlockBroadcast(context, smsMsg);
+            // 短信通知可能晚于本服务到达，延迟后再拦截一次
+            host.post(THREAD_BACKGROUND, () -> sendBlockBroadcast(context, smsMsg), 500);
+        }
+    }
+
+    private static void sendBlockBroadcast(Context context, SmsMsg smsMsg) {
+        Intent intent = new Intent(NotificationMonitorService.ACTION_BLOCK_SMS_NOTIFICATION);
+        intent.putExtra(NotificationMonitorService.EXTRA_KEY_SMS_MSG, smsMsg);
+        context.sendBroadcast(intent);
+    }
+}
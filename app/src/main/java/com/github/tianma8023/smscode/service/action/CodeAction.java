@@ -0,0 +1,69 @@
+package com.github.tianma8023.smscode.service.action;
+
+import com.github.tianma8023.smscode.service.HandlerConfig;
+
+import androidx.annotation.IntDef;
+
+/**
+ * Something to do with the SMS code after it is parsed, e.g. copy it to clipboard.
+ * <p>
+ * Register new actions in {@link CodeActionRegistry}. Actions with different thread
+ * affinities run concurrently, actions with the same affinity run by priority.
+ */
+public interface CodeAction {
+
+    // 主线程
+    int THREAD_MAIN = 0;
+    // 用户可见操作的工作线程
+    int THREAD_WORKER = 1;
+    // 低优先级后台线程
+    int THREAD_BACKGROUND = 2;
+
+    @IntDef({THREAD_MAIN, THREAD_WORKER, THREAD_BACKGROUND})
+    @interface ThreadAffinity {
+    }
+
+    // 用户可见的操作优先级较高
+    int PRIORITY_HIGHEST = 100;
+    int PRIORITY_HIGH = 75;
+    int PRIORITY_NORMAL = 50;
+    int PRIORITY_LOW = 25;
+
+    /**
+     * Unique name of the action, used in logs and stats
+     */
+    String getName();
+
+    @ThreadAffinity
+    int getThreadAffinity();
+
+    /**
+     * Larger runs earlier among actions of the same thread affinity
+     */
+    int getPriority();
+
+    /**
+     * Executions longer than this are counted as timeout
+     */
+    long getTimeoutMillis();
+
+    /**
+     * Delay before executing
+     */
+    long getDelayMillis();
+
+    /**
+     * Stage of {@link com.github.tianma8023.smscode.trace.PipelineTracer}, -1 if not traced
+     */
+    int getTraceStage();
+
+    /**
+     * Whether the action is deferred for a short window and runs once for all SMS
+     * which arrive in the window, e.g. a burst of SMS in multi-factor flows.
+     */
+    boolean isBatched();
+
+    boolean isEnabled(HandlerConfig config);
+
+    void execute(ActionHost host, CodeBatch batch) throws Exception;
+}
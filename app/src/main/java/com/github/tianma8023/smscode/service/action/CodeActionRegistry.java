@@ -0,0 +1,106 @@
+package com.github.tianma8023.smscode.service.action;
+
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of {@link CodeAction}s, actions are kept sorted by priority in descending order.
+ */
+public class CodeActionRegistry {
+
+    private static volatile List<CodeAction> sActions = Collections.emptyList();
+    private static final Map<String, ActionStats> sStats = new ConcurrentHashMap<>();
+
+    static {
+        register(new CopyToClipboardAction());
+        register(new AutoInputAction());
+        register(new CodeNotificationAction());
+        register(new ToastAction());
+        register(new BlockNotificationAction());
+        register(new RecordSmsAction());
+        register(new DeleteSmsAction());
+        register(new MarkAsReadAction());
+    }
+
+    private CodeActionRegistry() {
+    }
+
+    public static synchronized void register(CodeAction action) {
+        List<CodeAction> actions = new ArrayList<>(sActions);
+        for (CodeAction existing : actions) {
+            if (existing.getName().equals(action.getName())) {
+                throw new IllegalArgumentException("Duplicate action: " + action.getName());
+            }
+        }
+        actions.add(action);
+        Collections.sort(actions, (a1, a2) -> Integer.compare(a2.getPriority(), a1.getPriority()));
+        sStats.put(action.getName(), new ActionStats());
+        sActions = Collections.unmodifiableList(actions);
+    }
+
+    public static synchronized void unregister(String name) {
+        List<CodeAction> actions = new ArrayList<>(sActions);
+        for (int i = 0; i < actions.size(); i++) {
+            if (actions.get(i).getName().equals(name)) {
+                actions.remove(i);
+                sStats.remove(name);
+                sActions = Collections.unmodifiableList(actions);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registered actions, sorted by priority in descending order
+     */
+    public static List<CodeAction> getActions() {
+        return sActions;
+    }
+
+    public static ActionStats getStats(String name) {
+        return sStats.get(name);
+    }
+
+    public static void resetStats() {
+        for (ActionStats stats : sStats.values()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Execute the action on current thread and record its latency.
+     */
+    public static void run(CodeAction action, ActionHost host, CodeBatch batch) {
+        long start = PipelineTracer.now();
+        boolean failed = false;
+        try {
+            action.execute(host, batch);
+        } catch (Exception e) {
+            failed = true;
+            XLog.e("Action {} failed", action.getName(), e);
+        }
+        long end = PipelineTracer.now();
+        long nanos = end - start;
+        boolean timeout = nanos > TimeUnit.MILLISECONDS.toNanos(action.getTimeoutMillis());
+        if (timeout) {
+            XLog.w("Action {} took {} ms, exceeds timeout {} ms", action.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(nanos), action.getTimeoutMillis());
+        }
+        ActionStats stats = sStats.get(action.getName());
+        if (stats != null) {
+            stats.record(nanos, failed, timeout);
+        }
+        if (action.getTraceStage() >= 0) {
+            for (CodeJob job : batch.getJobs()) {
+                PipelineTracer.record(action.getTraceStage(), job.originNanos, start, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.tianma8023.smscode.service.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SMS code messages handled by one execution of an action, sorted by SMS date.
+ * <p>
+ * Batched actions get all messages which arrive in a burst, other actions get one.
+ */
+public class CodeBatch {
+
+    private final List<CodeJob> mJobs;
+
+    public CodeBatch(CodeJob job) {
+        mJobs = Collections.singletonList(job);
+    }
+
+    public CodeBatch(List<CodeJob> jobs) {
+        List<CodeJob> sorted = new ArrayList<>(jobs);
+        Collections.sort(sorted, (j1, j2) -> Long.compare(j1.smsMsg.getDate(), j2.smsMsg.getDate()));
+        mJobs = Collections.unmodifiableList(sorted);
+    }
+
+    public List<CodeJob> getJobs() {
+        return mJobs;
+    }
+
+    /**
+     * The newest SMS in the batch
+     */
+    public CodeJob getLatest() {
+        return mJobs.get(mJobs.size() - 1);
+    }
+
+    public int size() {
+        return mJobs.size();
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.tianma8023.smscode.service.action;
+
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+
+/**
+ * One SMS code message in the pipeline, shared by all actions.
+ */
+public class CodeJob {
+    public final SmsMsg smsMsg;
+    // 处理该短信时的配置快照
+    public final HandlerConfig config;
+    // SystemClock.elapsedRealtimeNanos() when the SMS is received
+    public final long originNanos;
+
+    public CodeJob(SmsMsg smsMsg, HandlerConfig config, long originNanos) {
+        this.smsMsg = smsMsg;
+        this.config = config;
+        this.originNanos = originNanos;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.text.TextUtils;
+
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.constant.NotificationConst;
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.CopyCodeService;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+import com.github.tianma8023.smscode.service.SmsCodeHandleService;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+/**
+ * 显示验证码通知
+ */
+class CodeNotificationAction extends BaseCodeAction {
+
+    CodeNotificationAction() {
+        super("notification", THREAD_WORKER, PRIORITY_NORMAL, PipelineTracer.STAGE_NOTIFICATION);
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.showCodeNotification;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        for (CodeJob job : batch.getJobs()) {
+            showCodeNotification(host, job);
+        }
+    }
+
+    private void showCodeNotification(ActionHost host, CodeJob job) {
+        Context context = host.getContext();
+        final NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (manager == null)
+            return;
+
+        SmsMsg smsMsg = job.smsMsg;
+        String company = smsMsg.getCompany();
+        String smsCode = smsMsg.getSmsCode();
+        String title = TextUtils.isEmpty(company) ? smsMsg.getSender() : company;
+        String content = context.getString(R.string.code_notification_content, smsCode);
+
+        final int notificationId = smsMsg.hashCode();
+
+        Intent copyCodeIntent = CopyCodeService.createCopyCodeIntent(context, smsCode);
+        PendingIntent contentIntent = PendingIntent.getService(context,
+                0,
+                copyCodeIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Intent stopServiceIntent = new Intent(SmsCodeHandleService.ACTION_STOP_HANDLE_SERVICE);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(context,
+                0, stopServiceIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Notification notification = new NotificationCompat.Builder(context, NotificationConst.CHANNEL_ID_SMSCODE_NOTIFICATION)
+                .setSmallIcon(R.drawable.ic_app_icon)
+                .setLargeIcon(host.getLargeIcon())
+                .setWhen(System.currentTimeMillis())
+                .setContentTitle(title)
+                .setContentText(content)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(deleteIntent)
+                .setAutoCancel(true)
+                .setColor(ContextCompat.getColor(context, R.color.ic_launcher_background))
+                .setGroup(NotificationConst.GROUP_KEY_SMSCODE_NOTIFICATION)
+                .build();
+
+        manager.notify(notificationId, notification);
+
+        // 是否自动清除验证码通知
+        if (job.config.autoCancelCodeNotification) {
+            host.listenStopCommand();
+            long retentionTime = job.config.notificationRetentionTime * 1000L;
+            host.post(THREAD_WORKER, () -> manager.cancel(notificationId), retentionTime);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.tianma8023.smscode.service.action;
+
+import com.github.tianma8023.smscode.service.HandlerConfig;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.ClipboardUtils;
+
+/**
+ * 复制验证码到剪切板
+ */
+class CopyToClipboardAction extends BaseCodeAction {
+
+    CopyToClipboardAction() {
+        super("clipboard", THREAD_MAIN, PRIORITY_HIGHEST, PipelineTracer.STAGE_CLIPBOARD);
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.copyToClipboard;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        CodeJob job = batch.getLatest();
+        if (host.isSuperseded(job)) {
+            return;
+        }
+        ClipboardUtils.copyToClipboard(host.getContext(), job.smsMsg.getSmsCode());
+    }
+}
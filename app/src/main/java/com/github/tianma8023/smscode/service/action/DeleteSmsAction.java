@@ -0,0 +1,32 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.ContentProviderOperation;
+import android.net.Uri;
+
+import com.github.tianma8023.smscode.service.HandlerConfig;
+
+/**
+ * 删除验证码短信
+ */
+class DeleteSmsAction extends SmsOperationAction {
+
+    DeleteSmsAction() {
+        super("deleteSms");
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.deleteSms;
+    }
+
+    @Override
+    String selectionForState() {
+        // 其他应用可能已将短信标记为已读，仍需删除
+        return null;
+    }
+
+    @Override
+    ContentProviderOperation buildOperation(Uri itemUri) {
+        return ContentProviderOperation.newDelete(itemUri).build();
+    }
+}
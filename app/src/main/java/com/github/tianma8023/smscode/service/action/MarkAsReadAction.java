@@ -0,0 +1,36 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.ContentProviderOperation;
+import android.net.Uri;
+import android.provider.Telephony;
+
+import com.github.tianma8023.smscode.service.HandlerConfig;
+
+/**
+ * 标记验证码短信为已读
+ */
+class MarkAsReadAction extends SmsOperationAction {
+
+    MarkAsReadAction() {
+        super("markAsRead");
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        // 删除短信时无需标记为已读
+        return config.markAsRead && !config.deleteSms;
+    }
+
+    @Override
+    String selectionForState() {
+        // 已读的短信无需再标记
+        return Telephony.Sms.READ + " = 0";
+    }
+
+    @Override
+    ContentProviderOperation buildOperation(Uri itemUri) {
+        return ContentProviderOperation.newUpdate(itemUri)
+                .withValue(Telephony.Sms.READ, 1)
+                .build();
+    }
+}
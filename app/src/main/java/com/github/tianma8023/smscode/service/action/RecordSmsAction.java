@@ -0,0 +1,42 @@
+package com.github.tianma8023.smscode.service.action;
+
+import com.github.tianma8023.smscode.db.DBManager;
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 记录验证码短信
+ */
+class RecordSmsAction extends BaseCodeAction {
+
+    RecordSmsAction() {
+        super("record", THREAD_BACKGROUND, PRIORITY_NORMAL, PipelineTracer.STAGE_RECORD);
+    }
+
+    @Override
+    public boolean isBatched() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.recordSmsCode;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        List<SmsMsg> smsMsgList = new ArrayList<>(batch.size());
+        for (CodeJob job : batch.getJobs()) {
+            smsMsgList.add(job.smsMsg);
+        }
+        HandlerConfig config = batch.getLatest().config;
+        DBManager.get(host.getContext())
+                .addSmsMsgRecords(smsMsgList, config.recordsMaxCount, config.recordsMaxAge);
+        XLog.d("Add {} SMS message records succeed", smsMsgList.size());
+    }
+}
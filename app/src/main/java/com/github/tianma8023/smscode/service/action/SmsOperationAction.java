@@ -0,0 +1,168 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.Manifest;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import android.text.TextUtils;
+
+import com.github.tianma8023.smscode.entity.SmsMsg;
+import com.github.tianma8023.smscode.trace.PipelineTracer;
+import com.github.tianma8023.smscode.utils.XLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Operation on the SMS in the SMS provider, e.g. delete or mark as read.
+ * <p>
+ * SMS of the batch are looked up by one query filtered by address, date and the state
+ * filter of the action, and operated by one {@link ContentResolver#applyBatch}. SMS not
+ * found are looked up again with backoff, since the default SMS app may write them late.
+ */
+abstract class SmsOperationAction extends BaseCodeAction {
+
+    private static final String SMS_AUTHORITY = "sms";
+
+    // 短信数据库中的时间可能早于收到短信的时间
+    private static final long DATE_SLACK_MILLIS = 60 * 1000;
+
+    // 重试次数及首次重试的等待时间，之后每次翻倍
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 200;
+
+    private static final String[] PROJECTION = new String[]{
+            Telephony.Sms._ID,
+            Telephony.Sms.ADDRESS,
+            Telephony.Sms.BODY,
+    };
+
+    SmsOperationAction(String name) {
+        super(name, THREAD_BACKGROUND, PRIORITY_LOW, PipelineTracer.STAGE_DELETE_OR_MARK_READ);
+    }
+
+    @Override
+    public long getDelayMillis() {
+        // 等待短信写入数据库
+        return 100;
+    }
+
+    @Override
+    public boolean isBatched() {
+        return true;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) throws Exception {
+        Context context = host.getContext();
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_SMS)
+                != PackageManager.PERMISSION_GRANTED) {
+            XLog.e("Don't have permission to read/write sms");
+            return;
+        }
+        List<SmsMsg> pending = new ArrayList<>(batch.size());
+        for (CodeJob job : batch.getJobs()) {
+            pending.add(job.smsMsg);
+        }
+        attempt(host, pending, 1);
+    }
+
+    private void attempt(final ActionHost host, final List<SmsMsg> pending, final int attempt) throws Exception {
+        ContentResolver resolver = host.getContext().getContentResolver();
+        List<Long> ids = lookup(resolver, pending);
+        if (!ids.isEmpty()) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(ids.size());
+            for (long id : ids) {
+                Uri itemUri = ContentUris.withAppendedId(Telephony.Sms.CONTENT_URI, id);
+                operations.add(buildOperation(itemUri));
+            }
+            resolver.applyBatch(SMS_AUTHORITY, operations);
+            XLog.i("{} succeed, {} SMS, attempt {}", getName(), ids.size(), attempt);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (attempt >= MAX_ATTEMPTS) {
+            XLog.w("{} gave up, {} SMS not found", getName(), pending.size());
+            return;
+        }
+        long backoff = INITIAL_BACKOFF_MILLIS << (attempt - 1);
+        host.post(THREAD_BACKGROUND, () -> {
+            try {
+                attempt(host, pending, attempt + 1);
+            } catch (Exception e) {
+                XLog.e("{} failed", getName(), e);
+            }
+        }, backoff);
+    }
+
+    /**
+     * Find the SMS in the provider, found ones are removed from pending.
+     *
+     * @return ids of the found SMS
+     */
+    private List<Long> lookup(ContentResolver resolver, List<SmsMsg> pending) {
+        Set<String> addresses = new LinkedHashSet<>();
+        long minDate = Long.MAX_VALUE;
+        for (SmsMsg smsMsg : pending) {
+            addresses.add(smsMsg.getSender());
+            minDate = Math.min(minDate, smsMsg.getDate());
+        }
+        List<String> args = new ArrayList<>(addresses);
+        args.add(String.valueOf(minDate - DATE_SLACK_MILLIS));
+        String selection = Telephony.Sms.ADDRESS + " in (" +
+                TextUtils.join(",", Collections.nCopies(addresses.size(), "?")) + ")" +
+                " and " + Telephony.Sms.DATE + " >= ?";
+        String stateSelection = selectionForState();
+        if (stateSelection != null) {
+            selection += " and " + stateSelection;
+        }
+        String sortOrder = Telephony.Sms.DATE + " desc";
+
+        List<Long> ids = new ArrayList<>();
+        try (Cursor cursor = resolver.query(Telephony.Sms.CONTENT_URI, PROJECTION,
+                selection, args.toArray(new String[0]), sortOrder)) {
+            if (cursor == null)
+                return ids;
+            final int idIndex = cursor.getColumnIndex(Telephony.Sms._ID);
+            final int addressIndex = cursor.getColumnIndex(Telephony.Sms.ADDRESS);
+            final int bodyIndex = cursor.getColumnIndex(Telephony.Sms.BODY);
+            while (cursor.moveToNext() && !pending.isEmpty()) {
+                String curAddress = cursor.getString(addressIndex);
+                String curBody = cursor.getString(bodyIndex);
+                if (curBody == null) {
+                    continue;
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    SmsMsg smsMsg = pending.get(i);
+                    if (smsMsg.getSender().equals(curAddress) && curBody.startsWith(smsMsg.getBody())) {
+                        ids.add(cursor.getLong(idIndex));
+                        pending.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Extra selection on the state of the SMS to operate, e.g. read state, null if none
+     */
+    abstract String selectionForState();
+
+    /**
+     * Operation on one SMS
+     */
+    abstract ContentProviderOperation buildOperation(Uri itemUri);
+}
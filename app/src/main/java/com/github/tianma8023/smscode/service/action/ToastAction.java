@@ -0,0 +1,33 @@
+package com.github.tianma8023.smscode.service.action;
+
+import android.content.Context;
+import android.widget.Toast;
+
+import com.github.tianma8023.smscode.R;
+import com.github.tianma8023.smscode.service.HandlerConfig;
+
+/**
+ * 显示验证码Toast
+ */
+class ToastAction extends BaseCodeAction {
+
+    ToastAction() {
+        super("toast", THREAD_MAIN, PRIORITY_NORMAL, -1);
+    }
+
+    @Override
+    public boolean isEnabled(HandlerConfig config) {
+        return config.showToast;
+    }
+
+    @Override
+    public void execute(ActionHost host, CodeBatch batch) {
+        CodeJob job = batch.getLatest();
+        if (host.isSuperseded(job)) {
+            return;
+        }
+        Context context = host.getContext();
+        String text = context.getString(R.string.cur_verification_code, job.smsMsg.getSmsCode());
+        Toast.makeText(context, text, Toast.LENGTH_LONG).show();
+    }
+}
@@ -0,0 +1,246 @@
+package com.github.tianma8023.smscode.trace;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.github.tianma8023.smscode.utils.StorageUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.IntDef;
+
+/**
+ * Latency spans of the SMS-to-clipboard pipeline.
+ * <p>
+ * All timestamps are {@link SystemClock#elapsedRealtimeNanos()}, which is monotonic and
+ * shared by all processes. Spans are kept in a fixed size lock-free ring buffer,
+ * the oldest spans are overwritten.
+ */
+public class PipelineTracer {
+
+    public static final int STAGE_RECEIVE = 0;
+    public static final int STAGE_START_SERVICE = 1;
+    public static final int STAGE_DO_WORK = 2;
+    public static final int STAGE_PARSE = 3;
+    public static final int STAGE_CLIPBOARD = 4;
+    public static final int STAGE_NOTIFICATION = 5;
+    public static final int STAGE_AUTO_INPUT = 6;
+    public static final int STAGE_RECORD = 7;
+    public static final int STAGE_DELETE_OR_MARK_READ = 8;
+
+    @IntDef({STAGE_RECEIVE, STAGE_START_SERVICE, STAGE_DO_WORK, STAGE_PARSE, STAGE_CLIPBOARD,
+            STAGE_NOTIFICATION, STAGE_AUTO_INPUT, STAGE_RECORD, STAGE_DELETE_OR_MARK_READ})
+    public @interface Stage {
+    }
+
+    private static final String[] STAGE_NAMES = {
+            "receive", "startService", "doWork", "parse", "clipboard",
+            "notification", "autoInput", "record", "deleteOrMarkRead"
+    };
+
+    public static final int STAGE_COUNT = STAGE_NAMES.length;
+
+    // must be power of 2
+    private static final int CAPACITY = 2048;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final AtomicLong sNext = new AtomicLong();
+    // sequence of the span in each slot, -1 while the slot is being written
+    private static final AtomicLongArray sSequences = new AtomicLongArray(CAPACITY);
+    private static final int[] sStages = new int[CAPACITY];
+    // start of the span since the origin of its trace
+    private static final long[] sOffsets = new long[CAPACITY];
+    private static final long[] sDurations = new long[CAPACITY];
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sSequences.set(i, -1);
+        }
+    }
+
+    private PipelineTracer() {
+    }
+
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static String stageName(@Stage int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Record a span.
+     *
+     * @param originNanos when the SMS was received, the origin of the trace
+     * @param startNanos  start of the span
+     * @param endNanos    end of the span
+     */
+    public static void record(@Stage int stage, long originNanos, long startNanos, long endNanos) {
+        long sequence = sNext.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        sSequences.set(slot, -1);
+        sStages[slot] = stage;
+        sOffsets[slot] = startNanos - originNanos;
+        sDurations[slot] = endNanos - startNanos;
+        // publish the slot
+        sSequences.set(slot, sequence);
+    }
+
+    /**
+     * Record a span which ends now.
+     */
+    public static void end(@Stage int stage, long originNanos, long startNanos) {
+        record(stage, originNanos, startNanos, now());
+    }
+
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sSequences.set(i, -1);
+        }
+    }
+
+    /**
+     * Copy spans currently in the buffer, from old to new. Slots being written are skipped.
+     */
+    public static List<Span> snapshot() {
+        long next = sNext.get();
+        long first = Math.max(0, next - CAPACITY);
+        List<Span> spans = new ArrayList<>((int) (next - first));
+        for (long sequence = first; sequence < next; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (sSequences.get(slot) != sequence) {
+                continue;
+            }
+            int stage = sStages[slot];
+            long offset = sOffsets[slot];
+            long duration = sDurations[slot];
+            // 读取期间被覆盖则丢弃
+            if (sSequences.get(slot) == sequence) {
+                spans.add(new Span(stage, offset, duration));
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Percentiles of every stage, index is the stage.
+     */
+    public static StageStats[] computeStats() {
+        List<Span> spans = snapshot();
+        int[] counts = new int[STAGE_COUNT];
+        for (Span span : spans) {
+            counts[span.stage]++;
+        }
+        long[][] durations = new long[STAGE_COUNT][];
+        long[][] ends = new long[STAGE_COUNT][];
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            durations[stage] = new long[counts[stage]];
+            ends[stage] = new long[counts[stage]];
+            counts[stage] = 0;
+        }
+        for (Span span : spans) {
+            int index = counts[span.stage]++;
+            durations[span.stage][index] = span.durationNanos;
+            ends[span.stage][index] = span.offsetNanos + span.durationNanos;
+        }
+        StageStats[] stats = new StageStats[STAGE_COUNT];
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            stats[stage] = new StageStats(stage, durations[stage], ends[stage]);
+        }
+        return stats;
+    }
+
+    /**
+     * Export spans and percentiles as CSV into the log directory.
+     *
+     * @return the exported file
+     */
+    public static File export(Context context) throws IOException {
+        File dir = StorageUtils.getLogDir(context);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create dir " + dir);
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(dir, "pipeline_trace_" + timestamp + ".csv");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("stage,count,p50_ms,p95_ms,p99_ms,since_receive_p50_ms,since_receive_p95_ms,since_receive_p99_ms\n");
+            for (StageStats stats : computeStats()) {
+                writer.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                        stageName(stats.stage), stats.count,
+                        toMillis(stats.p50), toMillis(stats.p95), toMillis(stats.p99),
+                        toMillis(stats.sinceReceiveP50), toMillis(stats.sinceReceiveP95),
+                        toMillis(stats.sinceReceiveP99)));
+            }
+            writer.write("\nstage,offset_ns,duration_ns\n");
+            for (Span span : snapshot()) {
+                writer.write(stageName(span.stage) + "," + span.offsetNanos + "," + span.durationNanos + "\n");
+            }
+        }
+        return file;
+    }
+
+    public static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    public static class Span {
+        @Stage
+        public final int stage;
+        public final long offsetNanos;
+        public final long durationNanos;
+
+        Span(int stage, long offsetNanos, long durationNanos) {
+            this.stage = stage;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    public static class StageStats {
+        @Stage
+        public final int stage;
+        public final int count;
+        // span durations
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        // span ends since the SMS was received
+        public final long sinceReceiveP50;
+        public final long sinceReceiveP95;
+        public final long sinceReceiveP99;
+
+        StageStats(int stage, long[] durations, long[] ends) {
+            this.stage = stage;
+            this.count = durations.length;
+            Arrays.sort(durations);
+            Arrays.sort(ends);
+            p50 = percentile(durations, 50);
+            p95 = percentile(durations, 95);
+            p99 = percentile(durations, 99);
+            sinceReceiveP50 = percentile(ends, 50);
+            sinceReceiveP95 = percentile(ends, 95);
+            sinceReceiveP99 = percentile(ends, 99);
+        }
+
+        // nearest-rank percentile of sorted values
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
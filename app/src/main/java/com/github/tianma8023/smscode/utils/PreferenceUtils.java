@@ -63,4 +63,17 @@ public class PreferenceUtils {
         getPreferences(context).edit().putLong(key, value).apply();
     }
 
+    /**
+     * Note: SharedPreferences holds the listener weakly, keep a strong reference to it.
+     */
+    public static void registerOnChangeListener(Context context,
+                                                SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        getPreferences(context).registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public static void unregisterOnChangeListener(Context context,
+                                                  SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        getPreferences(context).unregisterOnSharedPreferenceChangeListener(listener);
+    }
+
 }
@@ -15,8 +15,10 @@ public class SPUtils {
     private static final String FIRST_RUN_SINCE_V1 = "first_run_v1";
     // 是否已经对MIUI的"通知类短信"权限进行提示了
     private static final String SERVICE_SMS_PROMPT_SHOWN = "service_sms_prompt_shown";
-    private static final String LAST_SMS_DATE = "last_sms_date";
-    private static final String LAST_SMS_SENDER = "last_sms_sender";
+    // 短信去重缓存
+    private static final String SMS_DEDUP_ENTRIES = "sms_dedup_entries";
+    // 短信观察模式下已处理的最大短信 _ID
+    private static final String LAST_OBSERVED_SMS_ID = "last_observed_sms_id";
     // 本地的版本号
     private static final String LOCAL_VERSION_CODE = "local_version_code";
 
@@ -55,31 +57,31 @@ public class SPUtils {
     }
 
     /**
-     * 记录上次SMS的Sender
+     * 获取短信去重缓存
      */
-    public static void setLastSmsSender(Context context, String lastSender) {
-        PreferenceUtils.putString(context, LAST_SMS_SENDER, lastSender);
+    public static String getSmsDedupEntries(Context context) {
+        return PreferenceUtils.getString(context, SMS_DEDUP_ENTRIES, "");
     }
 
     /**
-     * 获取上次SMS的Sender
+     * 保存短信去重缓存
      */
-    public static String getLastSmsSender(Context context) {
-        return PreferenceUtils.getString(context, LAST_SMS_SENDER, "");
+    public static void setSmsDedupEntries(Context context, String entries) {
+        PreferenceUtils.putString(context, SMS_DEDUP_ENTRIES, entries);
     }
 
     /**
-     * 设置上次SMS的Date
+     * 获取短信观察模式下已处理的最大短信 _ID, -1 表示尚未记录
      */
-    public static void setLastSmsDate(Context context, long lastSendDate) {
-        PreferenceUtils.putLong(context, LAST_SMS_DATE, lastSendDate);
+    public static long getLastObservedSmsId(Context context) {
+        return PreferenceUtils.getLong(context, LAST_OBSERVED_SMS_ID, -1L);
     }
 
     /**
-     * 获取上次SMS的Date
+     * 保存短信观察模式下已处理的最大短信 _ID
      */
-    public static long getLastSmsDate(Context context) {
-        return PreferenceUtils.getLong(context, LAST_SMS_DATE, -1L);
+    public static void setLastObservedSmsId(Context context, long smsId) {
+        PreferenceUtils.putLong(context, LAST_OBSERVED_SMS_ID, smsId);
     }
 
     /**
@@ -281,4 +283,31 @@ public class SPUtils {
                 PrefConst.NOTIFICATION_RETENTION_TIME, PrefConst.NOTIFICATION_RETENTION_TIME_DEFAULT);
         return Integer.valueOf(value);
     }
+
+    /**
+     * 获取最多保留的验证码记录条数
+     */
+    public static int getRecordsMaxCount(Context context) {
+        String value = PreferenceUtils.getString(context,
+                PrefConst.RECORDS_MAX_COUNT, PrefConst.RECORDS_MAX_COUNT_DEFAULT);
+        return Integer.valueOf(value);
+    }
+
+    /**
+     * 获取验证码记录保留天数，0表示不限
+     */
+    public static int getRecordsMaxAge(Context context) {
+        String value = PreferenceUtils.getString(context,
+                PrefConst.RECORDS_MAX_AGE, PrefConst.RECORDS_MAX_AGE_DEFAULT);
+        return Integer.valueOf(value);
+    }
+
+    /**
+     * 获取处理服务的保温时间(秒)，0表示处理完立即退出
+     */
+    public static int getWarmIdleTime(Context context) {
+        String value = PreferenceUtils.getString(context,
+                PrefConst.WARM_IDLE_TIME, PrefConst.WARM_IDLE_TIME_DEFAULT);
+        return Integer.valueOf(value);
+    }
 }
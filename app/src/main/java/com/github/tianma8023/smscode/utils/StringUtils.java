@@ -5,6 +5,30 @@ public class StringUtils {
     private StringUtils() {
     }
 
+    private static final long FNV_64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+
+    /**
+     * 64-bit FNV-1a hash of the text, collides far less often than {@link String#hashCode()},
+     * suitable to be stored in database.
+     *
+     * @return hash of the text, 0 if text is null
+     */
+    public static long hash64(CharSequence text) {
+        if (text == null)
+            return 0;
+
+        long hash = FNV_64_OFFSET_BASIS;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_64_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_64_PRIME;
+        }
+        return hash;
+    }
+
     public static String escape(String str) {
         if (str == null)
             return null;
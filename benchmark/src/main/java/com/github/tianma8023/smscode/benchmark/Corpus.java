@@ -0,0 +1,43 @@
+package com.github.tianma8023.smscode.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bundled message corpus, one message per line.
+ */
+final class Corpus {
+
+    static final String OTP_CN = "otp_cn";
+    static final String OTP_EN = "otp_en";
+    static final String MARKETING = "marketing";
+    static final String DIGIT_RUNS = "digit_runs";
+
+    private Corpus() {
+    }
+
+    static String[] load(String name) {
+        String path = "/corpus/" + name + ".txt";
+        InputStream in = Corpus.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new IllegalArgumentException("Corpus not found: " + path);
+        }
+        List<String> messages = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    messages.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Read corpus failed: " + path, e);
+        }
+        return messages.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.tianma8023.smscode.benchmark;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+import com.github.tianma8023.smscode.parser.CodeRule;
+import com.github.tianma8023.smscode.parser.RuleIndex;
+import com.github.tianma8023.smscode.parser.SmsCodeParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the SMS code parser. Each operation parses the whole corpus.
+ * <p>
+ * Run with {@code ./gradlew :benchmark:jmh}, allocation rate is reported by the GC profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({Corpus.OTP_CN, Corpus.OTP_EN, Corpus.MARKETING, Corpus.DIGIT_RUNS})
+    public String corpus;
+
+    @Param({"0", "100", "1000", "10000"})
+    public int ruleCount;
+
+    private String[] mMessages;
+    private SmsCodeParser mParser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mMessages = Corpus.load(corpus);
+        final RuleIndex ruleIndex = RuleIndex.build(createRules(ruleCount));
+        mParser = new SmsCodeParser(() -> SmsCodeConst.VERIFICATION_KEYWORDS_REGEX, () -> ruleIndex);
+    }
+
+    /**
+     * Synthetic rules, most of them don't match the corpus like real imported rules.
+     */
+    private static List<CodeRule> createRules(int count) {
+        List<CodeRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String company = "公司" + i;
+            String keyword = i % 2 == 0 ? "验证码" : "code";
+            String regex = "(?<=" + keyword + ")\\D{0,5}(\\d{4,8})";
+            rules.add(new CodeRule((long) i, company, keyword, regex));
+        }
+        return rules;
+    }
+
+    @Benchmark
+    public void parseSmsCodeIfExists(Blackhole bh) {
+        for (String message : mMessages) {
+            bh.consume(mParser.parse(message));
+        }
+    }
+
+    @Benchmark
+    public void parseByCustomRules(Blackhole bh) {
+        for (String message : mMessages) {
+            bh.consume(mParser.parseByCustomRules(message));
+        }
+    }
+
+    @Benchmark
+    public void parseByDefaultRule(Blackhole bh) {
+        for (String message : mMessages) {
+            bh.consume(mParser.parseByDefaultRule(message));
+        }
+    }
+
+    @Benchmark
+    public void parseCompany(Blackhole bh) {
+        for (String message : mMessages) {
+            bh.consume(SmsCodeParser.parseCompany(message));
+        }
+    }
+}
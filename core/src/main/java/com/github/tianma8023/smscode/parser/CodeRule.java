@@ -0,0 +1,63 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Custom SMS code rule: if the message contains both the company and the keyword
+ * (case insensitive), the first match of the code regex is the SMS code.
+ */
+public class CodeRule {
+
+    private final Long mId;
+    private final String mCompany;
+    private final String mCodeKeyword;
+    private final String mCodeRegex;
+    private final boolean mQuarantined;
+
+    public CodeRule(Long id, String company, String codeKeyword, String codeRegex) {
+        this(id, company, codeKeyword, codeRegex, false);
+    }
+
+    /**
+     * @param quarantined whether the rule was quarantined before, see {@link RuleQuarantine}
+     */
+    public CodeRule(Long id, String company, String codeKeyword, String codeRegex, boolean quarantined) {
+        mId = id;
+        mCompany = company == null ? "" : company;
+        mCodeKeyword = codeKeyword == null ? "" : codeKeyword;
+        mCodeRegex = codeRegex;
+        mQuarantined = quarantined;
+    }
+
+    /**
+     * Rule id, null if the rule isn't persisted
+     */
+    public Long getId() {
+        return mId;
+    }
+
+    public String getCompany() {
+        return mCompany;
+    }
+
+    public String getCodeKeyword() {
+        return mCodeKeyword;
+    }
+
+    public String getCodeRegex() {
+        return mCodeRegex;
+    }
+
+    public boolean isQuarantined() {
+        return mQuarantined;
+    }
+
+    @Override
+    public String toString() {
+        return "CodeRule{" +
+                "id=" + mId +
+                ", company='" + mCompany + '\'' +
+                ", codeKeyword='" + mCodeKeyword + '\'' +
+                ", codeRegex='" + mCodeRegex + '\'' +
+                ", quarantined=" + mQuarantined +
+                '}';
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Hand-written scanner which finds the most possible SMS code in the content.
+ * <p>
+ * Candidates are runs of 4 to 8 letters or digits (digits only in digit mode), each
+ * candidate is scored inline and only the best one is kept, no intermediate strings
+ * are created.
+ * <p>
+ * The original text and its whitespace-free variant are evaluated in the same pass,
+ * use {@link #select(boolean)} to choose which variant takes precedence.
+ */
+public class CodeScanner {
+
+    /* 匹配度：6位纯数字，匹配度最高 */
+    public static final int LEVEL_DIGITAL_6 = 4;
+    /* 匹配度：4位纯数字，匹配度次之 */
+    public static final int LEVEL_DIGITAL_4 = 3;
+    /* 匹配度：纯数字, 匹配度最高*/
+    public static final int LEVEL_DIGITAL_OTHERS = 2;
+    /* 匹配度：数字+字母 混合, 匹配度其次*/
+    public static final int LEVEL_TEXT = 1;
+    /* 匹配度：纯字母, 匹配度最低*/
+    public static final int LEVEL_CHARACTER = 0;
+    public static final int LEVEL_NONE = -1;
+
+    private static final int MIN_CODE_LENGTH = 4;
+    private static final int MAX_CODE_LENGTH = 8;
+
+    // 验证码与关键字的距离在此范围内则认为靠近关键字
+    private static final int NEAR_DISTANCE = 30;
+
+    private final boolean mDigitOnly;
+
+    // candidates in the original text, offsets are original offsets
+    private final Candidates mRaw = new Candidates();
+    // candidates in the whitespace-free text, offsets are compact offsets
+    private final Candidates mCompact = new Candidates();
+
+    private CompactText mText;
+    private Candidates mSelected;
+
+    /**
+     * @param digitOnly true if candidates consist of digits only, otherwise letters or digits
+     */
+    public CodeScanner(boolean digitOnly) {
+        mDigitOnly = digitOnly;
+    }
+
+    /**
+     * Scan the content and its whitespace-free variant for SMS code in one pass.
+     *
+     * @param text            SMS content
+     * @param rawKeywords     keyword occurrences in the original content
+     * @param compactKeywords keyword occurrences in the whitespace-free content
+     */
+    public void scan(CompactText text, KeywordMatches rawKeywords, KeywordMatches compactKeywords) {
+        mText = text;
+        mSelected = null;
+        final CharSequence content = text.getOriginal();
+        final int length = content.length();
+        final int compactLength = text.length();
+        final boolean hasWhitespace = text.hasWhitespace();
+        mRaw.reset(rawKeywords, length);
+        mCompact.reset(compactKeywords, compactLength);
+
+        // raw run: [rawStart, i), whitespace breaks the run
+        int rawStart = -1;
+        boolean rawDigit = false, rawLetter = false;
+        // compact run: [compactStart, compactIndex), whitespace is skipped
+        int compactStart = -1;
+        boolean compactDigit = false, compactLetter = false;
+        int compactIndex = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            if (isCodeChar(c)) {
+                boolean digit = isDigit(c);
+                if (rawStart < 0) {
+                    rawStart = i;
+                    rawDigit = rawLetter = false;
+                }
+                rawDigit |= digit;
+                rawLetter |= !digit;
+                if (hasWhitespace) {
+                    if (compactStart < 0) {
+                        compactStart = compactIndex;
+                        compactDigit = compactLetter = false;
+                    }
+                    compactDigit |= digit;
+                    compactLetter |= !digit;
+                }
+            } else {
+                if (rawStart >= 0) {
+                    mRaw.offer(rawStart, i, rawDigit, rawLetter);
+                    rawStart = -1;
+                }
+                if (hasWhitespace && compactStart >= 0 && !CompactText.isWhitespace(c)) {
+                    mCompact.offer(compactStart, compactIndex, compactDigit, compactLetter);
+                    compactStart = -1;
+                }
+            }
+            if (!CompactText.isWhitespace(c)) {
+                compactIndex++;
+            }
+        }
+        if (rawStart >= 0) {
+            mRaw.offer(rawStart, length, rawDigit, rawLetter);
+        }
+        if (hasWhitespace && compactStart >= 0) {
+            mCompact.offer(compactStart, compactLength, compactDigit, compactLetter);
+        }
+        if (!hasWhitespace) {
+            // 没有空白字符时两者相同
+            mCompact.copyFrom(mRaw);
+        }
+    }
+
+    /**
+     * Select the variant whose best candidate will be reported.
+     *
+     * @param compactFirst true if the whitespace-free variant takes precedence,
+     *                     the other variant is used only if the preferred one has no candidate
+     * @return true if any candidate is selected
+     */
+    public boolean select(boolean compactFirst) {
+        Candidates first = compactFirst ? mCompact : mRaw;
+        Candidates second = compactFirst ? mRaw : mCompact;
+        if (first.count > 0) {
+            mSelected = first;
+        } else if (second.count > 0) {
+            mSelected = second;
+        } else {
+            mSelected = null;
+        }
+        return mSelected != null;
+    }
+
+    private boolean isCodeChar(char c) {
+        return isDigit(c) || (!mDigitOnly && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Whether the whitespace-free variant is selected
+     */
+    public boolean isCompactSelected() {
+        return mSelected != null && mSelected == mCompact;
+    }
+
+    /**
+     * Count of candidates in the selected variant
+     */
+    public int getCandidateCount() {
+        return mSelected == null ? 0 : mSelected.count;
+    }
+
+    /**
+     * Start offset of the selected code in the original content, -1 if none.
+     */
+    public int getCodeStart() {
+        if (mSelected == null) {
+            return -1;
+        }
+        int start = mSelected.start();
+        return mSelected == mCompact ? mText.toOriginal(start) : start;
+    }
+
+    /**
+     * End offset (exclusive) of the selected code in the original content, -1 if none.
+     */
+    public int getCodeEnd() {
+        if (mSelected == null) {
+            return -1;
+        }
+        int end = mSelected.end();
+        return mSelected == mCompact ? mText.toOriginal(end - 1) + 1 : end;
+    }
+
+    /**
+     * Match level of the selected code
+     */
+    public int getMatchLevel() {
+        return mSelected == null ? LEVEL_NONE : mSelected.level();
+    }
+
+    /**
+     * Materialize the selected code.
+     *
+     * @return the SMS code, or empty string if no candidate selected
+     */
+    public String getCode() {
+        if (mSelected == null) {
+            return "";
+        }
+        CharSequence source = mSelected == mCompact ? mText : mText.getOriginal();
+        return source.subSequence(mSelected.start(), mSelected.end()).toString();
+    }
+
+    private static int matchLevel(int length, boolean hasDigit, boolean hasLetter) {
+        if (!hasLetter) {
+            if (length == 6)
+                return LEVEL_DIGITAL_6;
+            if (length == 4)
+                return LEVEL_DIGITAL_4;
+            return LEVEL_DIGITAL_OTHERS;
+        }
+        if (!hasDigit)
+            return LEVEL_CHARACTER;
+        return LEVEL_TEXT;
+    }
+
+    /**
+     * Best candidates of one variant. Candidates near to keywords take precedence.
+     */
+    private static class Candidates {
+        private KeywordMatches keywords;
+        private int contentLength;
+
+        private int count;
+
+        // best candidate near to keywords
+        private int nearStart;
+        private int nearEnd;
+        private int nearLevel;
+        private int nearDistance;
+
+        // best candidate of all
+        private int anyStart;
+        private int anyEnd;
+        private int anyLevel;
+        private int anyDistance;
+
+        void reset(KeywordMatches keywords, int contentLength) {
+            this.keywords = keywords;
+            this.contentLength = contentLength;
+            count = 0;
+            nearStart = nearEnd = anyStart = anyEnd = -1;
+            nearLevel = anyLevel = LEVEL_NONE;
+        }
+
+        void copyFrom(Candidates other) {
+            keywords = other.keywords;
+            contentLength = other.contentLength;
+            count = other.count;
+            nearStart = other.nearStart;
+            nearEnd = other.nearEnd;
+            nearLevel = other.nearLevel;
+            nearDistance = other.nearDistance;
+            anyStart = other.anyStart;
+            anyEnd = other.anyEnd;
+            anyLevel = other.anyLevel;
+            anyDistance = other.anyDistance;
+        }
+
+        void offer(int start, int end, boolean hasDigit, boolean hasLetter) {
+            int length = end - start;
+            if (length < MIN_CODE_LENGTH || length > MAX_CODE_LENGTH) {
+                return;
+            }
+            count++;
+            int level = matchLevel(length, hasDigit, hasLetter);
+            int distance = distanceToKeyword(start);
+            if (level > anyLevel || (level == anyLevel && distance < anyDistance)) {
+                anyStart = start;
+                anyEnd = end;
+                anyLevel = level;
+                anyDistance = distance;
+            }
+            if (isNearToKeyword(start, end)) {
+                if (level > nearLevel || (level == nearLevel && distance < nearDistance)) {
+                    nearStart = start;
+                    nearEnd = end;
+                    nearLevel = level;
+                    nearDistance = distance;
+                }
+            }
+        }
+
+        /**
+         * 可能的验证码是否靠近关键字
+         */
+        private boolean isNearToKeyword(int start, int end) {
+            int beginIndex = 0, endIndex = contentLength - 1;
+            if (start - NEAR_DISTANCE > 0) {
+                beginIndex = start - NEAR_DISTANCE;
+            }
+            if (end + NEAR_DISTANCE < endIndex) {
+                endIndex = end + NEAR_DISTANCE;
+            }
+            // 关键字完全落在 [beginIndex, endIndex) 区间内
+            for (int i = 0; i < keywords.size(); i++) {
+                if (keywords.start(i) >= beginIndex && keywords.end(i) <= endIndex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 计算可能的验证码与最近的关键字的距离
+         */
+        private int distanceToKeyword(int start) {
+            int minDistance = contentLength;
+            for (int i = 0; i < keywords.size(); i++) {
+                int distance = Math.abs(keywords.start(i) - start);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                }
+            }
+            return minDistance;
+        }
+
+        int start() {
+            return nearStart >= 0 ? nearStart : anyStart;
+        }
+
+        int end() {
+            return nearStart >= 0 ? nearEnd : anyEnd;
+        }
+
+        int level() {
+            return nearStart >= 0 ? nearLevel : anyLevel;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Whitespace-free view of a text, with an offset map back to the original text.
+ * <p>
+ * Equivalent to {@code text.replaceAll("\\s+", "")} but without copying the chars.
+ */
+public class CompactText implements CharSequence {
+
+    private final CharSequence mOriginal;
+    // compact index -> original index
+    private final int[] mOffsets;
+    private final int mLength;
+
+    public CompactText(CharSequence original) {
+        mOriginal = original;
+        int originalLength = original.length();
+        int[] offsets = new int[originalLength];
+        int length = 0;
+        for (int i = 0; i < originalLength; i++) {
+            if (!isWhitespace(original.charAt(i))) {
+                offsets[length++] = i;
+            }
+        }
+        mOffsets = offsets;
+        mLength = length;
+    }
+
+    /**
+     * Same as regex {@code \s}
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    public CharSequence getOriginal() {
+        return mOriginal;
+    }
+
+    /**
+     * Whether the original text contains whitespace
+     */
+    public boolean hasWhitespace() {
+        return mLength != mOriginal.length();
+    }
+
+    /**
+     * Map compact index to original index.
+     */
+    public int toOriginal(int index) {
+        return mOffsets[index];
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + mLength);
+        }
+        return mOriginal.charAt(mOffsets[index]);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + mLength);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(mOriginal.charAt(mOffsets[i]));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, mLength).toString();
+    }
+}
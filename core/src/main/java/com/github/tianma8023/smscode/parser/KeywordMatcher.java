@@ -0,0 +1,172 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-keyword matcher built from the code keywords regex, such as
+ * {@code "验证码|校验码|Code"}.
+ * <p>
+ * Literal alternatives are matched by an Aho-Corasick automaton in one linear scan,
+ * only alternatives which are real regex fall back to {@link Pattern}.
+ */
+public class KeywordMatcher {
+
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+    // 顶层的内联标志如 (?i) 会作用于其后所有分支，此时不能拆分
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]+\\)");
+
+    private final String mSource;
+
+    private final LiteralAutomaton mAutomaton;
+    private final int[] mLiteralOrders;
+
+    private final Pattern[] mRegexes;
+    private final int[] mRegexOrders;
+
+    private KeywordMatcher(String source, List<String> literals, List<Integer> literalOrders,
+                           List<String> regexes, List<Integer> regexOrders) {
+        mSource = source;
+
+        mAutomaton = new LiteralAutomaton(literals);
+        mLiteralOrders = new int[literals.size()];
+        for (int i = 0; i < mLiteralOrders.length; i++) {
+            mLiteralOrders[i] = literalOrders.get(i);
+        }
+
+        mRegexes = new Pattern[regexes.size()];
+        mRegexOrders = new int[regexes.size()];
+        for (int i = 0; i < regexes.size(); i++) {
+            mRegexes[i] = PatternRegistry.getUserPattern(regexes.get(i));
+            mRegexOrders[i] = regexOrders.get(i);
+        }
+    }
+
+    /**
+     * Build matcher from keywords regex.
+     *
+     * @param keywordsRegex keywords separated by '|'
+     * @throws java.util.regex.PatternSyntaxException if some alternative is invalid regex
+     */
+    public static KeywordMatcher compile(String keywordsRegex) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> literalOrders = new ArrayList<>();
+        List<String> regexes = new ArrayList<>();
+        List<Integer> regexOrders = new ArrayList<>();
+
+        List<String> alternatives;
+        if (INLINE_FLAGS.matcher(keywordsRegex).find()) {
+            alternatives = new ArrayList<>();
+            alternatives.add(keywordsRegex);
+        } else {
+            alternatives = splitAlternatives(keywordsRegex);
+        }
+        for (int i = 0; i < alternatives.size(); i++) {
+            String alternative = alternatives.get(i);
+            if (alternative.isEmpty()) {
+                continue;
+            }
+            if (isLiteral(alternative)) {
+                literals.add(alternative);
+                literalOrders.add(i);
+            } else {
+                regexes.add(alternative);
+                regexOrders.add(i);
+            }
+        }
+        return new KeywordMatcher(keywordsRegex, literals, literalOrders, regexes, regexOrders);
+    }
+
+    public String getSource() {
+        return mSource;
+    }
+
+    /**
+     * Whether the text contains any keyword.
+     */
+    public boolean containsIn(CharSequence text) {
+        int state = LiteralAutomaton.ROOT;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            state = mAutomaton.step(state, text.charAt(i));
+            if (mAutomaton.hasOutput(state)) {
+                return true;
+            }
+        }
+        for (Pattern regex : mRegexes) {
+            if (regex.matcher(text).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find all keyword occurrences in the text.
+     */
+    public KeywordMatches match(CharSequence text) {
+        KeywordMatches matches = new KeywordMatches();
+        int state = LiteralAutomaton.ROOT;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            state = mAutomaton.step(state, text.charAt(i));
+            int outState = mAutomaton.firstOutputState(state);
+            while (outState >= 0) {
+                int literal = mAutomaton.output(outState);
+                matches.add(i + 1 - mAutomaton.literalLength(literal), i + 1, mLiteralOrders[literal]);
+                outState = mAutomaton.nextOutputState(outState);
+            }
+        }
+        for (int i = 0; i < mRegexes.length; i++) {
+            Matcher matcher = mRegexes[i].matcher(text);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    matches.add(matcher.start(), matcher.end(), mRegexOrders[i]);
+                }
+            }
+        }
+        matches.finish(text);
+        return matches;
+    }
+
+    private static boolean isLiteral(String alternative) {
+        for (int i = 0; i < alternative.length(); i++) {
+            if (REGEX_META_CHARS.indexOf(alternative.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split regex by top-level '|', ignoring escaped chars, groups and char classes.
+     */
+    private static List<String> splitAlternatives(String regex) {
+        List<String> result = new ArrayList<>();
+        int depth = 0;
+        boolean inCharClass = false;
+        int begin = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inCharClass) {
+                if (c == ']') {
+                    inCharClass = false;
+                }
+            } else if (c == '[') {
+                inCharClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                result.add(regex.substring(begin, i));
+                begin = i + 1;
+            }
+        }
+        result.add(regex.substring(begin));
+        return result;
+    }
+}
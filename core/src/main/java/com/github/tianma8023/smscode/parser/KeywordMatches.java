@@ -0,0 +1,82 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Arrays;
+
+/**
+ * Keyword occurrences found by {@link KeywordMatcher} in a single scan.
+ */
+public class KeywordMatches {
+
+    private int[] mStarts = new int[4];
+    private int[] mEnds = new int[4];
+    private int mSize;
+
+    private int mFirstStart = -1;
+    private int mFirstEnd = -1;
+    private int mFirstOrder = Integer.MAX_VALUE;
+    private String mFirstKeyword = "";
+
+    KeywordMatches() {
+    }
+
+    void add(int start, int end, int order) {
+        if (mSize == mStarts.length) {
+            mStarts = Arrays.copyOf(mStarts, mSize * 2);
+            mEnds = Arrays.copyOf(mEnds, mSize * 2);
+        }
+        mStarts[mSize] = start;
+        mEnds[mSize] = end;
+        mSize++;
+
+        // 与正则的语义保持一致：最左侧的匹配优先，起始位置相同时按关键字的先后顺序
+        if (mFirstStart < 0 || start < mFirstStart
+                || (start == mFirstStart && order < mFirstOrder)) {
+            mFirstStart = start;
+            mFirstEnd = end;
+            mFirstOrder = order;
+        }
+    }
+
+    void finish(CharSequence text) {
+        if (mFirstStart >= 0) {
+            mFirstKeyword = text.subSequence(mFirstStart, mFirstEnd).toString();
+        }
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Start offset (inclusive) of the index-th keyword occurrence
+     */
+    public int start(int index) {
+        return mStarts[index];
+    }
+
+    /**
+     * End offset (exclusive) of the index-th keyword occurrence
+     */
+    public int end(int index) {
+        return mEnds[index];
+    }
+
+    /**
+     * The first matched keyword, the same one as regex {@code Matcher#find()} returns,
+     * or empty string if no keyword matched.
+     */
+    public String firstKeyword() {
+        return mFirstKeyword;
+    }
+
+    /**
+     * Start offset of the first matched keyword, -1 if no keyword matched.
+     */
+    public int firstStart() {
+        return mFirstStart;
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a set of literals, finds all occurrences of all
+ * literals in one linear scan.
+ * <p>
+ * Usage:
+ * <pre>
+ * int state = LiteralAutomaton.ROOT;
+ * for (each char c) {
+ *     state = automaton.step(state, c);
+ *     for (int s = automaton.firstOutputState(state); s >= 0; s = automaton.nextOutputState(s)) {
+ *         int literal = automaton.output(s);
+ *     }
+ * }
+ * </pre>
+ */
+final class LiteralAutomaton {
+
+    static final int ROOT = 0;
+
+    // each state's edges are sorted by char
+    private final char[][] mEdgeChars;
+    private final int[][] mEdgeTargets;
+    private final int[] mFail;
+    // literal index output by the state, -1 if none
+    private final int[] mOutput;
+    // nearest state with output in the fail chain, -1 if none
+    private final int[] mDictLink;
+
+    private final int[] mLiteralLengths;
+
+    /**
+     * @param literals non-empty literals, duplicated literals only output the first index
+     */
+    LiteralAutomaton(List<String> literals) {
+        int literalCount = literals.size();
+        mLiteralLengths = new int[literalCount];
+
+        List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        outputs.add(-1);
+        for (int i = 0; i < literalCount; i++) {
+            String literal = literals.get(i);
+            mLiteralLengths[i] = literal.length();
+
+            int state = ROOT;
+            for (int j = 0; j < literal.length(); j++) {
+                char c = literal.charAt(j);
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<>());
+                    outputs.add(-1);
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (outputs.get(state) < 0) { // 重复的字面量只保留第一个
+                outputs.set(state, i);
+            }
+        }
+
+        int stateCount = edges.size();
+        mEdgeChars = new char[stateCount][];
+        mEdgeTargets = new int[stateCount][];
+        mOutput = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            TreeMap<Character, Integer> stateEdges = edges.get(state);
+            char[] chars = new char[stateEdges.size()];
+            int[] targets = new int[stateEdges.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> entry : stateEdges.entrySet()) {
+                chars[k] = entry.getKey();
+                targets[k] = entry.getValue();
+                k++;
+            }
+            mEdgeChars[state] = chars;
+            mEdgeTargets[state] = targets;
+            mOutput[state] = outputs.get(state);
+        }
+
+        // BFS to build fail links and dictionary links
+        mFail = new int[stateCount];
+        mDictLink = new int[stateCount];
+        Arrays.fill(mDictLink, -1);
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+        for (int target : mEdgeTargets[ROOT]) {
+            mFail[target] = ROOT;
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            char[] chars = mEdgeChars[state];
+            int[] targets = mEdgeTargets[state];
+            for (int k = 0; k < chars.length; k++) {
+                int target = targets[k];
+                int fallback = mFail[state];
+                int next;
+                while ((next = transition(fallback, chars[k])) < 0 && fallback != ROOT) {
+                    fallback = mFail[fallback];
+                }
+                mFail[target] = next < 0 ? ROOT : next;
+                int failState = mFail[target];
+                mDictLink[target] = mOutput[failState] >= 0 ? failState : mDictLink[failState];
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    /**
+     * Feed one char, return the next state.
+     */
+    int step(int state, char c) {
+        int next;
+        while ((next = transition(state, c)) < 0 && state != ROOT) {
+            state = mFail[state];
+        }
+        return next < 0 ? ROOT : next;
+    }
+
+    /**
+     * Whether some literal ends at the state.
+     */
+    boolean hasOutput(int state) {
+        return mOutput[state] >= 0 || mDictLink[state] >= 0;
+    }
+
+    /**
+     * First state with output in the fail chain of the state (itself included), -1 if none.
+     */
+    int firstOutputState(int state) {
+        return mOutput[state] >= 0 ? state : mDictLink[state];
+    }
+
+    /**
+     * Next state with output after the output state, -1 if none.
+     */
+    int nextOutputState(int outputState) {
+        return mDictLink[outputState];
+    }
+
+    /**
+     * Literal index output by the output state.
+     */
+    int output(int outputState) {
+        return mOutput[outputState];
+    }
+
+    int literalLength(int literal) {
+        return mLiteralLengths[literal];
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(mEdgeChars[state], c);
+        return index < 0 ? -1 : mEdgeTargets[state][index];
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Result of {@link SmsCodeParser#parse(String)}: the code, where it comes from and
+ * how long each parsing phase took.
+ */
+public class ParseResult {
+
+    private final String mCode;
+    private final int mStart;
+    private final int mEnd;
+    private final String mKeyword;
+    private final CodeRule mRule;
+    private final int mMatchLevel;
+    private final int mCandidateCount;
+
+    private final long mRulesNanos;
+    private final long mKeywordsNanos;
+    private final long mScanNanos;
+
+    private ParseResult(Builder builder) {
+        mCode = builder.code;
+        mStart = builder.start;
+        mEnd = builder.end;
+        mKeyword = builder.keyword;
+        mRule = builder.rule;
+        mMatchLevel = builder.matchLevel;
+        mCandidateCount = builder.candidateCount;
+        mRulesNanos = builder.rulesNanos;
+        mKeywordsNanos = builder.keywordsNanos;
+        mScanNanos = builder.scanNanos;
+    }
+
+    /**
+     * Whether SMS code is found
+     */
+    public boolean found() {
+        return !mCode.isEmpty();
+    }
+
+    /**
+     * SMS code, empty string if not found
+     */
+    public String getCode() {
+        return mCode;
+    }
+
+    /**
+     * Start offset of the code in the message body, -1 if not found
+     */
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * End offset (exclusive) of the code in the message body, -1 if not found
+     */
+    public int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * The keyword which locates the code: the first matched code keyword for the default rule,
+     * the rule's keyword for custom rules. Empty string if not found.
+     */
+    public String getKeyword() {
+        return mKeyword;
+    }
+
+    /**
+     * The custom rule which matched, null if the code is parsed by the default rule
+     */
+    public CodeRule getRule() {
+        return mRule;
+    }
+
+    /**
+     * Id of the custom rule which matched, null if the code is parsed by the default rule
+     */
+    public Long getRuleId() {
+        return mRule == null ? null : mRule.getId();
+    }
+
+    public boolean isByCustomRule() {
+        return mRule != null;
+    }
+
+    /**
+     * Match level of the code parsed by the default rule, see {@code CodeScanner.LEVEL_*}.
+     * {@link CodeScanner#LEVEL_NONE} for custom rules or not found.
+     */
+    public int getMatchLevel() {
+        return mMatchLevel;
+    }
+
+    /**
+     * Count of code candidates the default rule chose from,
+     * or count of custom rules whose regex was evaluated.
+     */
+    public int getCandidateCount() {
+        return mCandidateCount;
+    }
+
+    /**
+     * Nanoseconds spent on custom rules
+     */
+    public long getRulesNanos() {
+        return mRulesNanos;
+    }
+
+    /**
+     * Nanoseconds spent on matching code keywords of the default rule
+     */
+    public long getKeywordsNanos() {
+        return mKeywordsNanos;
+    }
+
+    /**
+     * Nanoseconds spent on scanning code candidates of the default rule
+     */
+    public long getScanNanos() {
+        return mScanNanos;
+    }
+
+    /**
+     * Nanoseconds spent on all phases
+     */
+    public long getTotalNanos() {
+        return mRulesNanos + mKeywordsNanos + mScanNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseResult{" +
+                "code='" + mCode + '\'' +
+                ", start=" + mStart +
+                ", end=" + mEnd +
+                ", keyword='" + mKeyword + '\'' +
+                ", ruleId=" + getRuleId() +
+                ", matchLevel=" + mMatchLevel +
+                ", candidateCount=" + mCandidateCount +
+                ", rulesNanos=" + mRulesNanos +
+                ", keywordsNanos=" + mKeywordsNanos +
+                ", scanNanos=" + mScanNanos +
+                '}';
+    }
+
+    /**
+     * Collects the result while parsing, one builder per parsing.
+     */
+    static class Builder {
+        private String code = "";
+        private int start = -1;
+        private int end = -1;
+        private String keyword = "";
+        private CodeRule rule;
+        private int matchLevel = CodeScanner.LEVEL_NONE;
+        private int candidateCount;
+
+        private long rulesNanos;
+        private long keywordsNanos;
+        private long scanNanos;
+
+        boolean found() {
+            return !code.isEmpty();
+        }
+
+        Builder code(String code, int start, int end) {
+            this.code = code;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        Builder keyword(String keyword) {
+            this.keyword = keyword;
+            return this;
+        }
+
+        Builder rule(CodeRule rule) {
+            this.rule = rule;
+            return this;
+        }
+
+        Builder matchLevel(int matchLevel) {
+            this.matchLevel = matchLevel;
+            return this;
+        }
+
+        Builder candidateCount(int candidateCount) {
+            this.candidateCount = candidateCount;
+            return this;
+        }
+
+        Builder rulesNanos(long rulesNanos) {
+            this.rulesNanos = rulesNanos;
+            return this;
+        }
+
+        Builder keywordsNanos(long keywordsNanos) {
+            this.keywordsNanos = keywordsNanos;
+            return this;
+        }
+
+        Builder scanNanos(long scanNanos) {
+            this.scanNanos = scanNanos;
+            return this;
+        }
+
+        ParseResult build() {
+            return new ParseResult(this);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of compiled regex patterns used while parsing SMS code.
+ * <p>
+ * Built-in patterns are compiled only once. User-defined patterns (code keywords)
+ * are cached by their source string, and should be invalidated when the preference
+ * changes. Custom rule regexes are compiled by {@link RuleIndex}.
+ */
+public class PatternRegistry {
+
+    /**
+     * Chinese characters or Chinese period
+     */
+    public static final Pattern CHINESE = Pattern.compile("[\u4e00-\u9fa5]|。");
+
+    /**
+     * Company info surrounded by 【】 or []
+     */
+    public static final Pattern COMPANY = Pattern.compile("((?<=【)(.*?)(?=】))|((?<=\\[)(.*?)(?=\\]))");
+
+    public static final Pattern PHONE_NUMBER_KEYWORDS = Pattern.compile(SmsCodeConst.PHONE_NUMBER_KEYWORDS);
+    public static final Pattern POSSIBLE_PHONE_NUMBER = Pattern.compile("\\d{8,}");
+
+    // 缓存上限，防止用户频繁修改规则时无限增长
+    private static final int MAX_USER_PATTERNS = 1024;
+
+    // 按访问顺序淘汰最久未使用的 pattern
+    private static final Map<String, Pattern> sUserPatterns =
+            new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                    return size() > MAX_USER_PATTERNS;
+                }
+            };
+
+    private PatternRegistry() {
+    }
+
+    /**
+     * Get compiled pattern of the user-defined regex, compile and cache it if absent.
+     *
+     * @param regex regex source
+     * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+     */
+    public static Pattern getUserPattern(String regex) {
+        Pattern pattern;
+        synchronized (sUserPatterns) {
+            pattern = sUserPatterns.get(regex);
+        }
+        if (pattern == null) {
+            // 编译放在锁外，避免阻塞其他线程
+            pattern = Pattern.compile(regex);
+            synchronized (sUserPatterns) {
+                Pattern existing = sUserPatterns.get(regex);
+                if (existing != null) {
+                    pattern = existing;
+                } else {
+                    sUserPatterns.put(regex, pattern);
+                }
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * Drop all cached user-defined patterns.
+     */
+    public static void invalidateUserPatterns() {
+        synchronized (sUserPatterns) {
+            sUserPatterns.clear();
+        }
+    }
+}
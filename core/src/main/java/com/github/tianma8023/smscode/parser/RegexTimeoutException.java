@@ -0,0 +1,13 @@
+package com.github.tianma8023.smscode.parser;
+
+/**
+ * Thrown when a regex runs out of its time budget, see {@link RegexWorker}.
+ */
+public class RegexTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 3518295472381604127L;
+
+    public RegexTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs custom rule regexes on a dedicated thread so that the caller can give up
+ * after the time budget.
+ * <p>
+ * A running regex can't be interrupted (on Android the matcher copies the input and
+ * never reads it back), so a worker which timed out is discarded and its thread is
+ * left to finish on its own. A rule is quarantined on its first timeout and the quarantine
+ * is persisted, so at most one thread is ever abandoned per rule.
+ * <p>
+ * A worker is used by one caller at a time, obtain it by {@link #obtain()} and give
+ * it back by {@link #recycle()}.
+ */
+final class RegexWorker {
+
+    // 空闲 worker 的缓存上限，多余的直接关闭
+    private static final int MAX_IDLE_WORKERS = 2;
+
+    private static final Queue<RegexWorker> sIdleWorkers = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final ExecutorService mExecutor;
+    private boolean mDiscarded;
+
+    private RegexWorker() {
+        mExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "RegexWorker-" + sThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static RegexWorker obtain() {
+        RegexWorker worker = sIdleWorkers.poll();
+        return worker != null ? worker : new RegexWorker();
+    }
+
+    /**
+     * Give the worker back, a discarded worker is ignored.
+     */
+    void recycle() {
+        if (mDiscarded) {
+            return;
+        }
+        if (sIdleWorkers.size() < MAX_IDLE_WORKERS) {
+            sIdleWorkers.offer(this);
+        } else {
+            mExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Whether the worker has been discarded after a timeout, obtain another one to go on.
+     */
+    boolean isDiscarded() {
+        return mDiscarded;
+    }
+
+    /**
+     * Find the first match of the pattern in the content within the time budget.
+     *
+     * @return the match, or null if not found
+     * @throws RegexTimeoutException if the budget runs out, the worker is discarded then
+     */
+    MatchResult find(final Pattern pattern, final String content, long timeoutNanos) {
+        if (mDiscarded) {
+            throw new IllegalStateException("RegexWorker has been discarded");
+        }
+        Future<MatchResult> future = mExecutor.submit(() -> {
+            Matcher matcher = pattern.matcher(content);
+            return matcher.find() ? matcher.toMatchResult() : null;
+        });
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            discard(future);
+            throw new RegexTimeoutException("Regex matching timed out: " + pattern.pattern());
+        } catch (InterruptedException e) {
+            // 调用方被中断，不是规则的问题，视为未匹配
+            discard(future);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void discard(Future<?> future) {
+        mDiscarded = true;
+        future.cancel(true);
+        mExecutor.shutdownNow();
+    }
+}
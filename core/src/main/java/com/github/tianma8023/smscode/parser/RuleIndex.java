@@ -0,0 +1,205 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable index of the custom rules.
+ * <p>
+ * Companies and keywords are lowercased once and put into one Aho-Corasick automaton,
+ * so a message is scanned only once to find the rules whose company and keyword both
+ * occur in it. Rule regexes are compiled when the index is built.
+ */
+public final class RuleIndex {
+
+    private static final RuleIndex EMPTY = new RuleIndex(Collections.<CodeRule>emptyList());
+
+    private static final int[] NO_CANDIDATES = new int[0];
+
+    private final CodeRule[] mRules;
+    private final Pattern[] mPatterns;
+
+    // literal index of each rule's company and keyword, -1 if empty
+    private final int[] mCompanyLiterals;
+    private final int[] mKeywordLiterals;
+
+    private final LiteralAutomaton mAutomaton;
+    private final int mLiteralCount;
+    // rules anchored at each literal, a rule is anchored at its company, or at its keyword if company is empty
+    private final int[][] mAnchoredRules;
+    // rules whose company and keyword are both empty, they are always candidates
+    private final int[] mUnconditionalRules;
+
+    private RuleIndex(List<CodeRule> rules) {
+        List<CodeRule> validRules = new ArrayList<>(rules.size());
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        for (CodeRule rule : rules) {
+            Pattern pattern = compile(rule.getCodeRegex());
+            if (pattern != null) {
+                validRules.add(rule);
+                patterns.add(pattern);
+            }
+        }
+
+        int ruleCount = validRules.size();
+        mRules = validRules.toArray(new CodeRule[0]);
+        mPatterns = patterns.toArray(new Pattern[0]);
+        mCompanyLiterals = new int[ruleCount];
+        mKeywordLiterals = new int[ruleCount];
+
+        Map<String, Integer> literalIndexes = new HashMap<>();
+        List<String> literals = new ArrayList<>();
+        List<List<Integer>> anchoredRules = new ArrayList<>();
+        List<Integer> unconditionalRules = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            CodeRule rule = mRules[i];
+            mCompanyLiterals[i] = literalIndex(rule.getCompany().toLowerCase(),
+                    literalIndexes, literals, anchoredRules);
+            mKeywordLiterals[i] = literalIndex(rule.getCodeKeyword().toLowerCase(),
+                    literalIndexes, literals, anchoredRules);
+
+            int anchor = mCompanyLiterals[i] >= 0 ? mCompanyLiterals[i] : mKeywordLiterals[i];
+            if (anchor >= 0) {
+                anchoredRules.get(anchor).add(i);
+            } else {
+                unconditionalRules.add(i);
+            }
+        }
+
+        mAutomaton = new LiteralAutomaton(literals);
+        mLiteralCount = literals.size();
+        mAnchoredRules = new int[mLiteralCount][];
+        for (int i = 0; i < mLiteralCount; i++) {
+            mAnchoredRules[i] = toIntArray(anchoredRules.get(i));
+        }
+        mUnconditionalRules = toIntArray(unconditionalRules);
+    }
+
+    /**
+     * Build index from rules, rules keep their order. Rules with invalid regex are dropped.
+     */
+    public static RuleIndex build(List<CodeRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return EMPTY;
+        }
+        return new RuleIndex(rules);
+    }
+
+    public static RuleIndex empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return mRules.length;
+    }
+
+    public CodeRule getRule(int index) {
+        return mRules[index];
+    }
+
+    Pattern getPattern(int index) {
+        return mPatterns[index];
+    }
+
+    /**
+     * Find the rules whose company and keyword both occur in the content (case insensitive).
+     *
+     * @return indexes of the candidate rules in ascending order
+     */
+    int[] candidates(String content) {
+        if (mRules.length == 0) {
+            return NO_CANDIDATES;
+        }
+        boolean[] seen = null;
+        int[] seenLiterals = null;
+        int seenCount = 0;
+        if (mLiteralCount > 0) {
+            String lowerContent = content.toLowerCase();
+            int state = LiteralAutomaton.ROOT;
+            for (int i = 0, len = lowerContent.length(); i < len; i++) {
+                state = mAutomaton.step(state, lowerContent.charAt(i));
+                for (int s = mAutomaton.firstOutputState(state); s >= 0; s = mAutomaton.nextOutputState(s)) {
+                    int literal = mAutomaton.output(s);
+                    if (seen == null) {
+                        seen = new boolean[mLiteralCount];
+                        seenLiterals = new int[8];
+                    }
+                    if (!seen[literal]) {
+                        seen[literal] = true;
+                        if (seenCount == seenLiterals.length) {
+                            seenLiterals = Arrays.copyOf(seenLiterals, seenCount * 2);
+                        }
+                        seenLiterals[seenCount++] = literal;
+                    }
+                }
+            }
+        }
+        if (seenCount == 0 && mUnconditionalRules.length == 0) {
+            return NO_CANDIDATES;
+        }
+
+        int[] result = new int[8];
+        int size = 0;
+        for (int i = 0; i < seenCount; i++) {
+            for (int rule : mAnchoredRules[seenLiterals[i]]) {
+                int keyword = mKeywordLiterals[rule];
+                if (keyword < 0 || seen[keyword]) {
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = rule;
+                }
+            }
+        }
+        for (int rule : mUnconditionalRules) {
+            if (size == result.length) {
+                result = Arrays.copyOf(result, size * 2);
+            }
+            result[size++] = rule;
+        }
+        result = Arrays.copyOf(result, size);
+        // 保持规则原有的优先顺序
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int literalIndex(String literal, Map<String, Integer> literalIndexes,
+                                    List<String> literals, List<List<Integer>> anchoredRules) {
+        if (literal.isEmpty()) {
+            return -1;
+        }
+        Integer index = literalIndexes.get(literal);
+        if (index == null) {
+            index = literals.size();
+            literalIndexes.put(literal, index);
+            literals.add(literal);
+            anchoredRules.add(new ArrayList<Integer>());
+        }
+        return index;
+    }
+
+    private static Pattern compile(String regex) {
+        if (regex == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Quarantine of custom rules whose regex timed out.
+ * <p>
+ * A rule is quarantined on its first timeout, since the regex thread it abandoned keeps
+ * running. Quarantined rules are skipped by {@link SmsCodeParser} until they are released,
+ * e.g. the rule is edited or removed. The quarantine is handed to the {@link Store} so that
+ * it survives restarts, persisted rules come back by {@link CodeRule#isQuarantined()}.
+ */
+public class RuleQuarantine {
+
+    /**
+     * Persistent storage of the quarantine
+     */
+    public interface Store {
+        /**
+         * The rule is quarantined just now, called on the parsing thread.
+         */
+        void onQuarantined(Long ruleId);
+    }
+
+    // 进程内已隔离的规则 id，持久化的隔离状态随规则一起加载
+    private static final Set<Long> sQuarantined =
+            Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    private static volatile Store sStore;
+
+    private RuleQuarantine() {
+    }
+
+    public static void setStore(Store store) {
+        sStore = store;
+    }
+
+    /**
+     * Quarantine the rule.
+     *
+     * @return true if the rule becomes quarantined just now
+     */
+    public static boolean quarantine(Long ruleId) {
+        if (ruleId == null || !sQuarantined.add(ruleId)) {
+            return false;
+        }
+        Store store = sStore;
+        if (store != null) {
+            store.onQuarantined(ruleId);
+        }
+        return true;
+    }
+
+    public static boolean isQuarantined(CodeRule rule) {
+        return rule.isQuarantined() || (rule.getId() != null && sQuarantined.contains(rule.getId()));
+    }
+
+    /**
+     * Forget the quarantine of the rule in this process.
+     */
+    public static void release(Long ruleId) {
+        if (ruleId != null) {
+            sQuarantined.remove(ruleId);
+        }
+    }
+
+    public static void releaseAll() {
+        sQuarantined.clear();
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.tianma8023.smscode.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+
+/**
+ * Context-free SMS code parser: keywords and custom rules in, parse result out.
+ * <p>
+ * Custom rules take precedence over the default rule, which finds the most possible
+ * code near to the code keywords.
+ */
+public class SmsCodeParser {
+
+    /**
+     * Source of the code keywords regex, such as {@code "验证码|校验码|Code"}
+     */
+    public interface KeywordsSource {
+        String getCodeKeywords();
+    }
+
+    /**
+     * Source of the custom rules, the index should be cached until the rules change
+     */
+    public interface RulesSource {
+        RuleIndex getRuleIndex();
+    }
+
+    /**
+     * Time budget of one custom rule's regex on one message
+     */
+    public static final long RULE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final KeywordsSource mKeywordsSource;
+    private final RulesSource mRulesSource;
+
+    // 最近一次使用的关键字匹配器，关键字改变时重建
+    private volatile KeywordMatcher mKeywordMatcher;
+
+    public SmsCodeParser(KeywordsSource keywordsSource, RulesSource rulesSource) {
+        mKeywordsSource = keywordsSource;
+        mRulesSource = rulesSource;
+    }
+
+    /**
+     * 解析文本中的验证码
+     */
+    public ParseResult parse(String content) {
+        ParseResult.Builder builder = new ParseResult.Builder();
+        if (!applyCustomRules(content, builder)) {
+            applyDefaultRule(content, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 是否包含验证码短信关键字
+     */
+    public boolean containsCodeKeywords(String content) {
+        return loadKeywordMatcher().containsIn(content);
+    }
+
+    /**
+     * 获取验证码关键字对应的匹配器，关键字未改变时复用之前的匹配器
+     */
+    private KeywordMatcher loadKeywordMatcher() {
+        String keywordsRegex = mKeywordsSource.getCodeKeywords();
+        KeywordMatcher matcher = mKeywordMatcher;
+        if (matcher == null || !matcher.getSource().equals(keywordsRegex)) {
+            matcher = KeywordMatcher.compile(keywordsRegex);
+            mKeywordMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * 是否包含中文
+     */
+    private static boolean containsChinese(String text) {
+        Matcher matcher = PatternRegistry.CHINESE.matcher(text);
+        return matcher.find();
+    }
+
+    /**
+     * Parse SMS code by default rule
+     */
+    public ParseResult parseByDefaultRule(String content) {
+        ParseResult.Builder builder = new ParseResult.Builder();
+        applyDefaultRule(content, builder);
+        return builder.build();
+    }
+
+    /**
+     * Parse SMS code by custom rules
+     */
+    public ParseResult parseByCustomRules(String content) {
+        ParseResult.Builder builder = new ParseResult.Builder();
+        applyCustomRules(content, builder);
+        return builder.build();
+    }
+
+    private boolean applyDefaultRule(String content, ParseResult.Builder builder) {
+        long startNanos = System.nanoTime();
+        KeywordMatcher keywordMatcher = loadKeywordMatcher();
+        KeywordMatches keywordMatches = keywordMatcher.match(content);
+        if (keywordMatches.isEmpty()) {
+            builder.keywordsNanos(System.nanoTime() - startNanos);
+            return false;
+        }
+
+        // 去掉所有空白字符的文本与原文本在同一趟扫描中处理
+        CompactText compactText = new CompactText(content);
+        KeywordMatches compactKeywordMatches = compactText.hasWhitespace() ?
+                keywordMatcher.match(compactText) : keywordMatches;
+        long keywordsEndNanos = System.nanoTime();
+        builder.keywordsNanos(keywordsEndNanos - startNanos);
+
+        // 之前的正则表达式是 [a-zA-Z0-9]{4,8} 或 [0-9]{4,8}
+        // 现在的正则表达式是 [a-zA-Z0-9]+(\.[a-zA-Z0-9]+)? 匹配数字和字母之间最多一个.的字符串
+        // 之前的不能识别和剔除小数，比如 123456.231，很容易就把 123456 作为验证码。
+        // 现在由 CodeScanner 扫描：中文短信是由字母和数字组成的 4 到 8 长度的字符串，
+        // 英文短信是由数字组成的 4 到 8 长度的字符串
+        boolean chinese = containsChinese(content);
+        CodeScanner scanner = new CodeScanner(!chinese);
+        scanner.scan(compactText, keywordMatches, compactKeywordMatches);
+        // 中文短信先按去掉所有空白字符的文本处理，英文短信先按照原文本处理
+        boolean found = scanner.select(chinese);
+        if (found) {
+            KeywordMatches selectedKeywords = scanner.isCompactSelected() ?
+                    compactKeywordMatches : keywordMatches;
+            builder.code(scanner.getCode(), scanner.getCodeStart(), scanner.getCodeEnd())
+                    .keyword(selectedKeywords.firstKeyword())
+                    .matchLevel(scanner.getMatchLevel())
+                    .candidateCount(scanner.getCandidateCount());
+        }
+        builder.scanNanos(System.nanoTime() - keywordsEndNanos);
+        return found;
+    }
+
+    private boolean applyCustomRules(String content, ParseResult.Builder builder) {
+        long startNanos = System.nanoTime();
+        RuleIndex ruleIndex = mRulesSource.getRuleIndex();
+        int evaluated = 0;
+        RegexWorker worker = null;
+        try {
+            // 只有公司和关键字都出现的规则才需要执行正则
+            for (int i : ruleIndex.candidates(content)) {
+                CodeRule rule = ruleIndex.getRule(i);
+                if (RuleQuarantine.isQuarantined(rule)) {
+                    continue;
+                }
+                evaluated++;
+                if (worker == null || worker.isDiscarded()) {
+                    worker = RegexWorker.obtain();
+                }
+                // 用户导入的正则可能发生灾难性回溯，超时则跳过该规则
+                try {
+                    MatchResult match = worker.find(ruleIndex.getPattern(i), content, RULE_TIMEOUT_NANOS);
+                    if (match != null) {
+                        builder.code(match.group(), match.start(), match.end())
+                                .keyword(rule.getCodeKeyword())
+                                .rule(rule);
+                        break;
+                    }
+                } catch (RegexTimeoutException e) {
+                    // 超时的线程无法停止，立即隔离，避免同一规则再占用线程
+                    RuleQuarantine.quarantine(rule.getId());
+                }
+            }
+        } finally {
+            if (worker != null) {
+                worker.recycle();
+            }
+        }
+        builder.candidateCount(evaluated)
+                .rulesNanos(System.nanoTime() - startNanos);
+        return builder.found();
+    }
+
+    public static boolean isPossiblePhoneNumber(String text) {
+        return PatternRegistry.POSSIBLE_PHONE_NUMBER.matcher(text).matches();
+    }
+
+    public static boolean containsPhoneNumberKeywords(String content) {
+        Matcher matcher = PatternRegistry.PHONE_NUMBER_KEYWORDS.matcher(content);
+        return matcher.find();
+    }
+
+    /**
+     * Parse company info from message content if it exists
+     *
+     * @param content message content
+     * @return company info if it exists, otherwise return empty string
+     */
+    public static String parseCompany(String content) {
+        Matcher matcher = PatternRegistry.COMPANY.matcher(content);
+        List<String> possibleCompanies = new ArrayList<>();
+        while (matcher.find()) {
+            possibleCompanies.add(matcher.group());
+        }
+        StringBuilder sb = new StringBuilder();
+        boolean needBlank = false; // 是否需要空格分隔
+        for (String company : possibleCompanies) {
+            if (needBlank) {
+                sb.append(' ');
+            } else {
+                needBlank = true;
+            }
+            sb.append(company);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CodeScannerTest {
+
+    private static final KeywordMatcher KEYWORDS = KeywordMatcher.compile(SmsCodeConst.VERIFICATION_KEYWORDS_REGEX);
+
+    private static CodeScanner scan(String content, boolean digitOnly) {
+        CompactText text = new CompactText(content);
+        KeywordMatches raw = KEYWORDS.match(content);
+        KeywordMatches compact = text.hasWhitespace() ? KEYWORDS.match(text) : raw;
+        CodeScanner scanner = new CodeScanner(digitOnly);
+        scanner.scan(text, raw, compact);
+        return scanner;
+    }
+
+    @Test
+    public void prefersSixDigits() {
+        String content = "Your code is 123456, valid for 10 minutes. Ref 2024";
+        CodeScanner scanner = scan(content, true);
+        assertTrue(scanner.select(false));
+        assertEquals("123456", scanner.getCode());
+        assertEquals(CodeScanner.LEVEL_DIGITAL_6, scanner.getMatchLevel());
+        assertEquals(content.indexOf("123456"), scanner.getCodeStart());
+        assertEquals(content.indexOf("123456") + 6, scanner.getCodeEnd());
+        assertFalse(scanner.isCompactSelected());
+    }
+
+    @Test
+    public void findsMixedCodeInChineseMessage() {
+        CodeScanner scanner = scan("【某某】您的验证码是a1b2c3，请勿泄露", false);
+        assertTrue(scanner.select(true));
+        assertEquals("a1b2c3", scanner.getCode());
+        assertEquals(CodeScanner.LEVEL_TEXT, scanner.getMatchLevel());
+    }
+
+    @Test
+    public void joinsCodeSplitByWhitespace() {
+        String content = "您的验证码是 123 456，请勿泄露";
+        CodeScanner scanner = scan(content, false);
+        assertTrue(scanner.select(true));
+        assertTrue(scanner.isCompactSelected());
+        assertEquals("123456", scanner.getCode());
+        // 偏移量映射回原文本
+        assertEquals(content.indexOf("123"), scanner.getCodeStart());
+        assertEquals(content.indexOf("456") + 3, scanner.getCodeEnd());
+    }
+
+    @Test
+    public void digitOnlyIgnoresLetters() {
+        CodeScanner scanner = scan("code: abcdef", true);
+        assertFalse(scanner.select(false));
+        assertEquals("", scanner.getCode());
+        assertEquals(-1, scanner.getCodeStart());
+        assertEquals(CodeScanner.LEVEL_NONE, scanner.getMatchLevel());
+        assertEquals(0, scanner.getCandidateCount());
+    }
+
+    @Test
+    public void ignoresTooShortAndTooLongRuns() {
+        CodeScanner scanner = scan("code 123 123456789", true);
+        assertFalse(scanner.select(false));
+    }
+}
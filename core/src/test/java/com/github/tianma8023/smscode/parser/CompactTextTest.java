@@ -0,0 +1,40 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactTextTest {
+
+    @Test
+    public void stripsWhitespace() {
+        CompactText text = new CompactText("12 34\t5\n6");
+        assertTrue(text.hasWhitespace());
+        assertEquals("123456", text.toString());
+        assertEquals(6, text.length());
+        assertEquals('5', text.charAt(4));
+        assertEquals("345", text.subSequence(2, 5).toString());
+    }
+
+    @Test
+    public void mapsToOriginalOffsets() {
+        String original = "12 34\t5\n6";
+        CompactText text = new CompactText(original);
+        assertEquals(0, text.toOriginal(0));
+        assertEquals(3, text.toOriginal(2));
+        assertEquals(6, text.toOriginal(4));
+        assertEquals(8, text.toOriginal(5));
+        assertSame(original, text.getOriginal());
+    }
+
+    @Test
+    public void textWithoutWhitespace() {
+        CompactText text = new CompactText("验证码123456");
+        assertFalse(text.hasWhitespace());
+        assertEquals("验证码123456", text.toString());
+        assertEquals(3, text.toOriginal(3));
+    }
+}
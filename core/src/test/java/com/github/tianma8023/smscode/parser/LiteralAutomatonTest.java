@@ -0,0 +1,70 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiteralAutomatonTest {
+
+    /**
+     * Scan the text, return "literal@endIndex" of all occurrences in scan order
+     */
+    private static List<String> scan(LiteralAutomaton automaton, String text) {
+        List<String> occurrences = new ArrayList<>();
+        int state = LiteralAutomaton.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = automaton.step(state, text.charAt(i));
+            for (int s = automaton.firstOutputState(state); s >= 0; s = automaton.nextOutputState(s)) {
+                occurrences.add(automaton.output(s) + "@" + (i + 1));
+            }
+        }
+        Collections.sort(occurrences);
+        return occurrences;
+    }
+
+    @Test
+    public void findsOverlappingLiterals() {
+        LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList("he", "she", "his", "hers"));
+        assertEquals(Arrays.asList("0@4", "1@4", "3@6"), scan(automaton, "ushers"));
+        assertEquals(Arrays.asList("2@3"), scan(automaton, "his"));
+    }
+
+    @Test
+    public void findsChineseLiterals() {
+        LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList("验证码", "码"));
+        assertEquals(Arrays.asList("0@5", "1@5"), scan(automaton, "您的验证码是123456"));
+        assertEquals(3, automaton.literalLength(0));
+    }
+
+    @Test
+    public void duplicatedLiteralOutputsFirstIndex() {
+        LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList("code", "code"));
+        assertEquals(Arrays.asList("0@4"), scan(automaton, "code"));
+    }
+
+    @Test
+    public void noOutputWithoutMatch() {
+        LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList("abc"));
+        int state = LiteralAutomaton.ROOT;
+        for (char c : "ababab".toCharArray()) {
+            state = automaton.step(state, c);
+            assertFalse(automaton.hasOutput(state));
+        }
+        state = automaton.step(state, 'c');
+        assertTrue(automaton.hasOutput(state));
+    }
+
+    @Test
+    public void emptyAutomatonStaysAtRoot() {
+        LiteralAutomaton automaton = new LiteralAutomaton(Collections.<String>emptyList());
+        assertEquals(LiteralAutomaton.ROOT, automaton.step(LiteralAutomaton.ROOT, 'a'));
+        assertFalse(automaton.hasOutput(LiteralAutomaton.ROOT));
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.tianma8023.smscode.parser;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RuleIndexTest {
+
+    private static CodeRule rule(long id, String company, String keyword, String regex) {
+        return new CodeRule(id, company, keyword, regex);
+    }
+
+    @Test
+    public void dropsInvalidRegex() {
+        RuleIndex index = RuleIndex.build(Arrays.asList(
+                rule(1, "Bank", "code", "\\d{6}"),
+                rule(2, "Bank", "code", "(\\d{6}")));
+        assertEquals(1, index.size());
+        assertEquals(Long.valueOf(1), index.getRule(0).getId());
+    }
+
+    @Test
+    public void requiresBothCompanyAndKeyword() {
+        RuleIndex index = RuleIndex.build(Arrays.asList(
+                rule(1, "Bank", "code", "\\d{6}"),
+                rule(2, "Shop", "code", "\\d{6}"),
+                rule(3, "Bank", "pin", "\\d{4}")));
+        assertArrayEquals(new int[]{0}, index.candidates("[Bank] your code is 123456"));
+        assertArrayEquals(new int[]{0, 2}, index.candidates("[Bank] your code is 123456, pin 1234"));
+        assertArrayEquals(new int[0], index.candidates("your code is 123456"));
+    }
+
+    @Test
+    public void matchesCaseInsensitively() {
+        RuleIndex index = RuleIndex.build(Collections.singletonList(rule(1, "BANK", "Code", "\\d{6}")));
+        assertArrayEquals(new int[]{0}, index.candidates("[bank] CODE 123456"));
+    }
+
+    @Test
+    public void emptyCompanyAnchorsAtKeyword() {
+        RuleIndex index = RuleIndex.build(Arrays.asList(
+                rule(1, "", "验证码", "\\d{6}"),
+                rule(2, "", "", "\\d{4}")));
+        assertArrayEquals(new int[]{0, 1}, index.candidates("您的验证码是123456"));
+        // 公司和关键字都为空的规则总是候选
+        assertArrayEquals(new int[]{1}, index.candidates("1234"));
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(0, RuleIndex.empty().size());
+        assertArrayEquals(new int[0], RuleIndex.empty().candidates("code 123456"));
+    }
+}
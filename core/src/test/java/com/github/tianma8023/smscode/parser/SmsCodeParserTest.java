@@ -0,0 +1,129 @@
+package com.github.tianma8023.smscode.parser;
+
+import com.github.tianma8023.smscode.constant.SmsCodeConst;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SmsCodeParserTest {
+
+    private static SmsCodeParser parser(RuleIndex ruleIndex) {
+        return new SmsCodeParser(() -> SmsCodeConst.VERIFICATION_KEYWORDS_REGEX, () -> ruleIndex);
+    }
+
+    @Test
+    public void parsesChineseMessage() {
+        String content = "【某某银行】您的验证码是 384729，5分钟内有效。";
+        ParseResult result = parser(RuleIndex.empty()).parse(content);
+        assertTrue(result.found());
+        assertEquals("384729", result.getCode());
+        assertEquals("验证码", result.getKeyword());
+        assertEquals(content.indexOf("384729"), result.getStart());
+        assertFalse(result.isByCustomRule());
+    }
+
+    @Test
+    public void parsesEnglishMessage() {
+        ParseResult result = parser(RuleIndex.empty()).parse("Your verification code is 4821. Do not share it.");
+        assertTrue(result.found());
+        assertEquals("4821", result.getCode());
+        assertEquals(CodeScanner.LEVEL_DIGITAL_4, result.getMatchLevel());
+    }
+
+    @Test
+    public void ignoresMessageWithoutKeywords() {
+        SmsCodeParser parser = parser(RuleIndex.empty());
+        assertFalse(parser.containsCodeKeywords("Meet me at 1830 tomorrow"));
+        assertFalse(parser.parse("Meet me at 1830 tomorrow").found());
+    }
+
+    @Test
+    public void customRuleTakesPrecedence() {
+        CodeRule rule = new CodeRule(7L, "Bank", "pin", "(?<=pin )\\d{4}");
+        ParseResult result = parser(RuleIndex.build(Collections.singletonList(rule)))
+                .parse("[Bank] code 123456, pin 9876");
+        assertTrue(result.found());
+        assertTrue(result.isByCustomRule());
+        assertEquals("9876", result.getCode());
+        assertEquals(Long.valueOf(7), result.getRuleId());
+    }
+
+    @Test
+    public void fallsBackToDefaultRule() {
+        CodeRule rule = new CodeRule(7L, "Shop", "pin", "\\d{4}");
+        ParseResult result = parser(RuleIndex.build(Collections.singletonList(rule)))
+                .parse("[Bank] code 123456");
+        assertTrue(result.found());
+        assertFalse(result.isByCustomRule());
+        assertNull(result.getRuleId());
+        assertEquals("123456", result.getCode());
+    }
+
+    @Test
+    public void quarantinesCatastrophicRule() {
+        // 反向引用使 JDK 的回溯记忆优化失效，匹配时间随 a 的个数指数增长
+        CodeRule evil = new CodeRule(42L, "", "code", "(a+)+\\1b");
+        CodeRule good = new CodeRule(43L, "", "code", "(?<=pin )\\d{4}");
+        SmsCodeParser parser = parser(RuleIndex.build(Arrays.asList(evil, good)));
+        String content = "code 123456 pin 9876 aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+
+        List<Long> stored = new ArrayList<>();
+        RuleQuarantine.setStore(stored::add);
+
+        assertFalse(RuleQuarantine.isQuarantined(evil));
+        long startNanos = System.nanoTime();
+        ParseResult result = parser.parse(content);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 1000);
+        // 超时的规则被跳过，后面的规则照常执行
+        assertEquals(Long.valueOf(43), result.getRuleId());
+        assertEquals("9876", result.getCode());
+        // 第一次超时即被隔离并持久化
+        assertTrue(RuleQuarantine.isQuarantined(evil));
+        assertEquals(Collections.singletonList(42L), stored);
+
+        result = parser.parse(content);
+        assertEquals(1, result.getCandidateCount());
+        assertEquals("9876", result.getCode());
+        assertEquals(1, stored.size());
+    }
+
+    @Test
+    public void skipsPersistedQuarantine() {
+        CodeRule evil = new CodeRule(42L, "", "code", "(a+)+\\1b", true);
+        CodeRule good = new CodeRule(43L, "", "code", "(?<=pin )\\d{4}");
+        ParseResult result = parser(RuleIndex.build(Arrays.asList(evil, good)))
+                .parse("code 123456 pin 9876 aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!");
+        assertEquals(1, result.getCandidateCount());
+        assertEquals(Long.valueOf(43), result.getRuleId());
+    }
+
+    @After
+    public void releaseRules() {
+        RuleQuarantine.setStore(null);
+        RuleQuarantine.releaseAll();
+    }
+
+    @Test
+    public void parsesCompany() {
+        assertEquals("某某银行", SmsCodeParser.parseCompany("【某某银行】验证码123456"));
+        assertEquals("Bank", SmsCodeParser.parseCompany("[Bank] code 123456"));
+    }
+
+    @Test
+    public void detectsPhoneNumber() {
+        assertTrue(SmsCodeParser.isPossiblePhoneNumber("13800138000"));
+        assertFalse(SmsCodeParser.isPossiblePhoneNumber("123456"));
+    }
+}